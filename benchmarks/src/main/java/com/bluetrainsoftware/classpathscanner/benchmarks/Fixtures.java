@@ -0,0 +1,177 @@
+package com.bluetrainsoftware.classpathscanner.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Builds the synthetic classpaths the benchmarks scan. They are generated once into a directory (by default under
+ * java.io.tmpdir) and reused by later runs, so only the first run pays for them.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class Fixtures {
+	public static final String FIXTURE_DIRECTORY_PROPERTY = "benchmark.fixtures";
+
+	/**
+	 * The offsets inside the war, in the style of a Bathe booter war with nested exploded jars
+	 */
+	private static final String[] WAR_OFFSETS = {"WEB-INF/classes/", "WEB-INF/jars/alpha/", "WEB-INF/jars/beta/"};
+
+	public enum Kind {
+		SMALL_STORED(200, false),
+		SMALL_DEFLATED(200, true),
+		HUGE_STORED(50000, false),
+		HUGE_DEFLATED(50000, true),
+		DIRECTORY(20000, true),
+		WAR_OFFSETS(20000, true);
+
+		final int entries;
+		final boolean deflated;
+
+		Kind(int entries, boolean deflated) {
+			this.entries = entries;
+			this.deflated = deflated;
+		}
+	}
+
+	private final File directory;
+
+	public Fixtures() {
+		this(new File(System.getProperty(FIXTURE_DIRECTORY_PROPERTY, new File(System.getProperty("java.io.tmpdir"), "classpath-scanner-benchmarks").getAbsolutePath())));
+	}
+
+	public Fixtures(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return - the files the fixture is made of, so the page cache can be dropped for them
+	 */
+	public File file(Kind kind) {
+		return new File(directory, kind.name().toLowerCase() + (kind == Kind.DIRECTORY ? "" : kind == Kind.WAR_OFFSETS ? ".war" : ".jar"));
+	}
+
+	/**
+	 * @return - the URLs a URLClassLoader for the fixture should have, creating it if necessary
+	 */
+	public URL[] urls(Kind kind) throws IOException {
+		File file = file(kind);
+
+		if (!file.exists()) {
+			create(kind, file);
+		}
+
+		if (kind != Kind.WAR_OFFSETS) {
+			return new URL[] {file.toURI().toURL()};
+		}
+
+		List<URL> urls = new ArrayList<>();
+
+		for (String offset : WAR_OFFSETS) {
+			urls.add(new URL("jar:" + file.toURI().toURL() + "!/" + offset));
+		}
+
+		return urls.toArray(new URL[urls.size()]);
+	}
+
+	private void create(Kind kind, File file) throws IOException {
+		directory.mkdirs();
+
+		// build it to the side so a failed run never leaves half a fixture
+		File temp = new File(directory, file.getName() + ".tmp");
+
+		if (kind == Kind.DIRECTORY) {
+			createDirectory(temp, kind.entries);
+		} else {
+			createJar(temp, kind);
+		}
+
+		if (!temp.renameTo(file)) {
+			throw new IOException("Unable to create " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * A deep tree, ten packages at each of six levels with the classes spread across the leaves.
+	 */
+	private void createDirectory(File root, int entries) throws IOException {
+		for (int count = 0; count < entries; count++) {
+			File file = new File(root, name("", count));
+			file.getParentFile().mkdirs();
+
+			OutputStream stream = new FileOutputStream(file);
+
+			try {
+				stream.write(content(count));
+			} finally {
+				stream.close();
+			}
+		}
+	}
+
+	private void createJar(File jar, Kind kind) throws IOException {
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+
+		try {
+			for (int count = 0; count < kind.entries; count++) {
+				String prefix = kind == Kind.WAR_OFFSETS ? WAR_OFFSETS[count % WAR_OFFSETS.length] : "";
+				byte[] data = content(count);
+				JarEntry entry = new JarEntry(name(prefix, count));
+
+				if (!kind.deflated) {
+					CRC32 crc = new CRC32();
+					crc.update(data);
+
+					entry.setMethod(ZipEntry.STORED);
+					entry.setSize(data.length);
+					entry.setCrc(crc.getValue());
+				}
+
+				stream.putNextEntry(entry);
+				stream.write(data);
+			}
+
+			if (kind == Kind.WAR_OFFSETS) {
+				// files in the war itself that none of the offsets cover
+				for (int count = 0; count < 100; count++) {
+					stream.putNextEntry(new JarEntry("static/page" + count + ".html"));
+					stream.write(content(count));
+				}
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static String name(String prefix, int count) {
+		StringBuilder name = new StringBuilder(prefix).append("com/bluetrainsoftware");
+
+		for (int level = 0, remaining = count; level < 6; level++, remaining /= 10) {
+			name.append("/p").append(remaining % 10);
+		}
+
+		return name.append("/Generated").append(count).append(".class").toString();
+	}
+
+	/**
+	 * Something that compresses about as well as a class file.
+	 */
+	private static byte[] content(int count) {
+		byte[] data = new byte[1024 + (count % 7) * 512];
+
+		for (int pos = 0; pos < data.length; pos++) {
+			data[pos] = (byte) ((pos * 31 + count) % (pos % 3 == 0 ? 251 : 17));
+		}
+
+		return data;
+	}
+}
@@ -0,0 +1,173 @@
+package com.bluetrainsoftware.classpathscanner.benchmarks;
+
+import com.bluetrainsoftware.classpathscanner.ClasspathScanner;
+import com.bluetrainsoftware.classpathscanner.ResourceScanListener;
+import com.bluetrainsoftware.classpathscanner.ScanConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ClasspathScanner.scan across the synthetic classpaths in Fixtures. Each invocation of scan is a complete
+ * scan with a fresh scanner and class loader; rescan measures a REPEAT listener being given the same classpath again.
+ *
+ * In the cold cache state the command in the benchmark.dropCaches system property is run before each invocation,
+ * e.g. -Dbenchmark.dropCaches="sudo sh -c 'sync; echo 1 > /proc/sys/vm/drop_caches'", without it cold is the same
+ * as warm. Allocation rates come from the gc profiler: java -jar target/benchmarks.jar -prof gc
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmarks {
+	public static final String DROP_CACHES_PROPERTY = "benchmark.dropCaches";
+
+	@Param({"SMALL_STORED", "SMALL_DEFLATED", "HUGE_STORED", "HUGE_DEFLATED", "DIRECTORY", "WAR_OFFSETS"})
+	public Fixtures.Kind kind;
+
+	@Param({"JAR_FILE", "MAPPED"})
+	public ScanConfiguration.JarEngine engine;
+
+	@Param({"warm", "cold"})
+	public String cache;
+
+	/**
+	 * false just lists the resources, true asks for and reads every one of them
+	 */
+	@Param({"false", "true"})
+	public boolean readContent;
+
+	private URL[] urls;
+	private ClasspathScanner rescanner;
+	private URLClassLoader rescanLoader;
+	private BlackholeListener rescanListener;
+
+	/**
+	 * Hands everything it is offered to the blackhole, REPEAT so it can be used for rescans.
+	 */
+	static class BlackholeListener implements ResourceScanListener {
+		Blackhole blackhole;
+		private final boolean readContent;
+		private final byte[] buffer = new byte[8192];
+
+		BlackholeListener(Blackhole blackhole, boolean readContent) {
+			this.blackhole = blackhole;
+			this.readContent = readContent;
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			for (ScanResource scanResource : scanResources) {
+				blackhole.consume(scanResource.resourceName);
+			}
+
+			return readContent ? scanResources : null;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+			try {
+				int read;
+
+				while ((read = inputStream.read(buffer)) != -1) {
+					blackhole.consume(read);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.REPEAT;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void createFixture() throws IOException {
+		urls = new Fixtures().urls(kind);
+	}
+
+	@Setup(Level.Invocation)
+	public void dropCaches() throws IOException, InterruptedException {
+		String command = System.getProperty(DROP_CACHES_PROPERTY);
+
+		if ("cold".equals(cache) && command != null) {
+			Process process = new ProcessBuilder("sh", "-c", command).inheritIO().start();
+
+			if (process.waitFor() != 0) {
+				throw new IOException("Failed to drop caches with: " + command);
+			}
+		}
+	}
+
+	private ClasspathScanner newScanner() {
+		ClasspathScanner.resetScannerForTesting();
+
+		ClasspathScanner scanner = ClasspathScanner.getInstance();
+		scanner.getConfiguration().setJarEngine(engine);
+
+		return scanner;
+	}
+
+	@Benchmark
+	public void scan(Blackhole blackhole) throws IOException {
+		ClasspathScanner scanner = newScanner();
+		URLClassLoader loader = new URLClassLoader(urls, null);
+
+		try {
+			scanner.registerResourceScanner(new BlackholeListener(blackhole, readContent));
+			blackhole.consume(scanner.scan(loader));
+		} finally {
+			loader.close();
+		}
+	}
+
+	@Benchmark
+	public void rescan(Blackhole blackhole) {
+		if (rescanner == null) {
+			rescanner = newScanner();
+			rescanLoader = new URLClassLoader(urls, null);
+			rescanListener = new BlackholeListener(blackhole, readContent);
+			rescanner.registerResourceScanner(rescanListener);
+		}
+
+		rescanListener.blackhole = blackhole;
+		blackhole.consume(rescanner.scan(rescanLoader));
+	}
+
+	@TearDown(Level.Trial)
+	public void closeLoader() throws IOException {
+		if (rescanLoader != null) {
+			rescanLoader.close();
+			rescanLoader = null;
+			rescanner = null;
+		}
+	}
+}
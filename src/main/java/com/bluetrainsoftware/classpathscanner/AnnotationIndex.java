@@ -0,0 +1,160 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers "which classes carry annotation X" for a scanned classpath. Each class gets a dense id and each annotation
+ * keeps the ids of the classes that carry it as a bitset, so a 60k class classpath costs a few bytes per class per
+ * annotation at worst. When parent loaders are scanned, the answers include the classes of the parents.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class AnnotationIndex {
+	private final ClassIdTable classes;
+
+	/**
+	 * The index of the parent loader's classpath, if parents are being scanned
+	 */
+	private final AnnotationIndex parent;
+	private final Map<String, BitSet> classAnnotations = new HashMap<>();
+	private final Map<String, BitSet> memberAnnotations = new HashMap<>();
+
+	AnnotationIndex(ClassIdTable classes, AnnotationIndex parent) {
+		this.classes = classes;
+		this.parent = parent;
+	}
+
+	/**
+	 * Called as each class is parsed, the caller holds the lock on the class table.
+	 */
+	void add(int classId, ClassFileInfo classInfo) {
+		synchronized (this) {
+			mark(classAnnotations, classInfo.annotations, classId);
+			mark(memberAnnotations, classInfo.memberAnnotations, classId);
+		}
+	}
+
+	private static void mark(Map<String, BitSet> index, List<String> annotations, int classId) {
+		for (String annotation : annotations) {
+			BitSet ids = index.get(annotation);
+
+			if (ids == null) {
+				ids = new BitSet();
+				index.put(annotation, ids);
+			}
+
+			ids.set(classId);
+		}
+	}
+
+	/**
+	 * @param annotation - the dotted name of the annotation
+	 * @return - the names of the classes annotated with it
+	 */
+	public List<String> getClassesAnnotatedWith(String annotation) {
+		List<String> names = names(classAnnotations, annotation);
+
+		return parent == null ? names : inherited(parent.getClassesAnnotatedWith(annotation), names);
+	}
+
+	/**
+	 * @param annotation - the dotted name of the annotation
+	 * @return - the names of the classes with a field or method annotated with it
+	 */
+	public List<String> getClassesWithMembersAnnotatedWith(String annotation) {
+		List<String> names = names(memberAnnotations, annotation);
+
+		return parent == null ? names : inherited(parent.getClassesWithMembersAnnotatedWith(annotation), names);
+	}
+
+	/**
+	 * @return - true if the class itself carries the annotation
+	 */
+	public boolean isAnnotatedWith(String className, String annotation) {
+		if (parent != null && parent.isAnnotatedWith(className, annotation)) {
+			return true;
+		}
+
+		synchronized (classes) {
+			int id = classes.find(className);
+
+			synchronized (this) {
+				BitSet ids = classAnnotations.get(annotation);
+
+				return id >= 0 && ids != null && ids.get(id);
+			}
+		}
+	}
+
+	/**
+	 * @return - the number of distinct annotations seen on classes or members
+	 */
+	public synchronized int getAnnotationCount() {
+		Map<String, BitSet> all = new HashMap<>(classAnnotations);
+		all.putAll(memberAnnotations);
+
+		return all.size();
+	}
+
+	/**
+	 * @return - roughly how many bytes the bitsets are using
+	 */
+	public synchronized long getBitsetBytes() {
+		long bytes = 0;
+
+		for (BitSet ids : classAnnotations.values()) {
+			bytes += ids.size() / 8;
+		}
+
+		for (BitSet ids : memberAnnotations.values()) {
+			bytes += ids.size() / 8;
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * The parent's classes first, as they come first on the classpath.
+	 */
+	static List<String> inherited(List<String> parentNames, List<String> names) {
+		if (parentNames.isEmpty()) {
+			return names;
+		}
+
+		Set<String> all = new LinkedHashSet<>(parentNames);
+		all.addAll(names);
+
+		return new ArrayList<>(all);
+	}
+
+	private List<String> names(Map<String, BitSet> index, String annotation) {
+		BitSet ids;
+
+		synchronized (this) {
+			ids = index.get(annotation);
+
+			if (ids == null) {
+				return Collections.emptyList();
+			}
+
+			ids = (BitSet) ids.clone();
+		}
+
+		List<String> names = new ArrayList<>(ids.cardinality());
+
+		synchronized (classes) {
+			for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+				names.add(classes.name(id));
+			}
+		}
+
+		return names;
+	}
+}
@@ -0,0 +1,52 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams the remaining bytes of a buffer, used to hand out mapped jar entries without copying them.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ByteBufferInputStream extends InputStream {
+	private final ByteBuffer buffer;
+
+	ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int)Math.max(0, Math.min(n, buffer.remaining()));
+
+		buffer.position(buffer.position() + skipped);
+
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+}
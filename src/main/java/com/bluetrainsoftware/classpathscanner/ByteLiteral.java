@@ -0,0 +1,76 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * A run of UTF-8 bytes to look for in raw names, e.g. a filter's prefix or a jar offset. It is compared eight bytes
+ * at a time, each eight read from the name as a single long, with the last few bytes compared one at a time, so
+ * names in a mapped central directory can be matched without decoding them or going through them byte by byte.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ByteLiteral {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final ByteLiteral EMPTY = new ByteLiteral(new byte[0]);
+
+	final byte[] bytes;
+
+	/**
+	 * The bytes packed little endian, as getLong reads them from a central directory
+	 */
+	private final long[] words;
+
+	ByteLiteral(String text) {
+		this(text.getBytes(UTF8));
+	}
+
+	ByteLiteral(byte[] bytes) {
+		this.bytes = bytes;
+		this.words = new long[bytes.length / 8];
+
+		for (int word = 0; word < words.length; word++) {
+			long value = 0;
+
+			for (int count = 7; count >= 0; count--) {
+				value = (value << 8) | (bytes[word * 8 + count] & 0xff);
+			}
+
+			words[word] = value;
+		}
+	}
+
+	int length() {
+		return bytes.length;
+	}
+
+	/**
+	 * @param buffer - holds the name, it must have all of the literal's bytes from pos on
+	 * @param pos - where in the buffer the literal should be
+	 * @return - true if the bytes there are the literal
+	 */
+	boolean at(ByteBuffer buffer, int pos) {
+		int count = 0;
+
+		// names we read ourselves are always little endian, anything else is compared a byte at a time
+		if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+			for (long word : words) {
+				if (buffer.getLong(pos + count) != word) {
+					return false;
+				}
+
+				count += 8;
+			}
+		}
+
+		for (; count < bytes.length; count++) {
+			if (buffer.get(pos + count) != bytes[count]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,69 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The structure of a class file as read by the ClassFileParser, without the class ever being loaded. Names are in
+ * the usual dotted form, e.g. com.bluetrainsoftware.classpathscanner.ClassFileInfo
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ClassFileInfo {
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_INTERFACE = 0x0200;
+	public static final int ACC_ABSTRACT = 0x0400;
+	public static final int ACC_ANNOTATION = 0x2000;
+	public static final int ACC_ENUM = 0x4000;
+
+	public final String className;
+	/**
+	 * null for java.lang.Object and module-info
+	 */
+	public final String superclassName;
+	public final List<String> interfaceNames;
+	public final int accessFlags;
+	/**
+	 * The class level annotations, both runtime visible and invisible (class retention)
+	 */
+	public final List<String> annotations;
+	/**
+	 * The annotations found on any field or method, each one listed once
+	 */
+	public final List<String> memberAnnotations;
+
+	public ClassFileInfo(String className, String superclassName, List<String> interfaceNames, int accessFlags, List<String> annotations) {
+		this(className, superclassName, interfaceNames, accessFlags, annotations, Collections.<String>emptyList());
+	}
+
+	public ClassFileInfo(String className, String superclassName, List<String> interfaceNames, int accessFlags, List<String> annotations, List<String> memberAnnotations) {
+		this.className = className;
+		this.superclassName = superclassName;
+		this.interfaceNames = interfaceNames;
+		this.accessFlags = accessFlags;
+		this.annotations = annotations;
+		this.memberAnnotations = memberAnnotations;
+	}
+
+	public boolean isInterface() {
+		return (accessFlags & ACC_INTERFACE) != 0;
+	}
+
+	public boolean isAnnotation() {
+		return (accessFlags & ACC_ANNOTATION) != 0;
+	}
+
+	public boolean isAbstract() {
+		return (accessFlags & ACC_ABSTRACT) != 0;
+	}
+
+	public boolean isEnum() {
+		return (accessFlags & ACC_ENUM) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return className;
+	}
+}
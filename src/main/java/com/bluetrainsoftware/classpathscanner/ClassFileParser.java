@@ -0,0 +1,389 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the class name, superclass, interfaces, access flags and class and member annotations straight out of the
+ * bytes of a class file. Only the offsets of the constant pool entries are recorded and only the strings that end up
+ * in the result are ever decoded. A parser reuses its buffers, so each thread should have its own - see forThread().
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ClassFileParser {
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	private static final byte[] VISIBLE_ANNOTATIONS = ascii("RuntimeVisibleAnnotations");
+	private static final byte[] INVISIBLE_ANNOTATIONS = ascii("RuntimeInvisibleAnnotations");
+
+	private static final ThreadLocal<ClassFileParser> parsers = new ThreadLocal<ClassFileParser>() {
+		@Override
+		protected ClassFileParser initialValue() {
+			return new ClassFileParser();
+		}
+	};
+
+	private byte[] bytes = new byte[8192];
+	private int length;
+	private int[] offsets = new int[512];
+	private char[] chars = new char[256];
+
+	/**
+	 * @return - the parser for this thread
+	 */
+	public static ClassFileParser forThread() {
+		return parsers.get();
+	}
+
+	/**
+	 * Reads the whole stream and parses it. The stream is not closed.
+	 */
+	public ClassFileInfo parse(InputStream stream) throws IOException {
+		length = 0;
+
+		int read;
+
+		while ((read = stream.read(bytes, length, bytes.length - length)) != -1) {
+			length += read;
+
+			if (length == bytes.length) {
+				byte[] grown = new byte[bytes.length * 2];
+				System.arraycopy(bytes, 0, grown, 0, length);
+				bytes = grown;
+			}
+		}
+
+		return parse();
+	}
+
+	public ClassFileInfo parse(byte[] classFile, int offset, int len) throws IOException {
+		if (bytes.length < len) {
+			bytes = new byte[len];
+		}
+
+		System.arraycopy(classFile, offset, bytes, 0, len);
+		length = len;
+
+		return parse();
+	}
+
+	private ClassFileInfo parse() throws IOException {
+		try {
+			if (length < 10 || s4(0) != MAGIC) {
+				throw new IOException("Not a class file");
+			}
+
+			int pos = readConstantPool();
+
+			int access = u2(pos);
+			String className = className(u2(pos + 2));
+			int superIndex = u2(pos + 4);
+			String superclassName = superIndex == 0 ? null : className(superIndex);
+
+			int interfaceCount = u2(pos + 6);
+			pos += 8;
+
+			List<String> interfaces;
+
+			if (interfaceCount == 0) {
+				interfaces = Collections.emptyList();
+			} else {
+				interfaces = new ArrayList<>(interfaceCount);
+
+				for (int count = 0; count < interfaceCount; count++) {
+					interfaces.add(className(u2(pos)));
+					pos += 2;
+				}
+			}
+
+			List<String> memberAnnotations = new ArrayList<>(0);
+
+			pos = readMembers(pos, memberAnnotations); // fields
+			pos = readMembers(pos, memberAnnotations); // methods
+
+			if (memberAnnotations.isEmpty()) {
+				memberAnnotations = Collections.emptyList();
+			}
+
+			List<String> annotations = Collections.emptyList();
+
+			int attributeCount = u2(pos);
+			pos += 2;
+
+			for (int count = 0; count < attributeCount; count++) {
+				int attributeLength = s4(pos + 2);
+
+				if (isAnnotationAttribute(u2(pos))) {
+					if (annotations.isEmpty()) {
+						annotations = new ArrayList<>();
+					}
+
+					readAnnotations(pos + 6, annotations);
+				}
+
+				pos += 6 + attributeLength;
+			}
+
+			if (pos > length) {
+				throw new IOException("Truncated class file");
+			}
+
+			return new ClassFileInfo(className, superclassName, interfaces, access, annotations, memberAnnotations);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Truncated class file", e);
+		}
+	}
+
+	/**
+	 * Records where each constant starts.
+	 *
+	 * @return - the position just after the constant pool
+	 */
+	private int readConstantPool() throws IOException {
+		int count = u2(8);
+
+		if (offsets.length < count) {
+			offsets = new int[count];
+		}
+
+		int pos = 10;
+
+		for (int index = 1; index < count; index++) {
+			offsets[index] = pos;
+
+			int tag = bytes[pos];
+
+			switch (tag) {
+				case CONSTANT_UTF8:
+					pos += 3 + u2(pos + 1);
+					break;
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					pos += 3;
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					pos += 4;
+					break;
+				case CONSTANT_INTEGER:
+				case CONSTANT_FLOAT:
+				case CONSTANT_FIELDREF:
+				case CONSTANT_METHODREF:
+				case CONSTANT_INTERFACE_METHODREF:
+				case CONSTANT_NAME_AND_TYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					pos += 5;
+					break;
+				case CONSTANT_LONG:
+				case CONSTANT_DOUBLE:
+					pos += 9;
+					index++; // takes two slots
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+
+		return pos;
+	}
+
+	/**
+	 * Walks the fields or methods picking up their annotations.
+	 *
+	 * @return - the position after the members
+	 */
+	private int readMembers(int pos, List<String> memberAnnotations) {
+		int memberCount = u2(pos);
+		pos += 2;
+
+		for (int member = 0; member < memberCount; member++) {
+			int attributeCount = u2(pos + 6);
+			pos += 8;
+
+			for (int count = 0; count < attributeCount; count++) {
+				if (isAnnotationAttribute(u2(pos))) {
+					int annotationCount = u2(pos + 6);
+					int annotationPos = pos + 8;
+
+					for (int annotation = 0; annotation < annotationCount; annotation++) {
+						String name = descriptorName(u2(annotationPos));
+
+						if (!memberAnnotations.contains(name)) {
+							memberAnnotations.add(name);
+						}
+
+						annotationPos = skipAnnotation(annotationPos);
+					}
+				}
+
+				pos += 6 + s4(pos + 2);
+			}
+		}
+
+		return pos;
+	}
+
+	private boolean isAnnotationAttribute(int nameIndex) {
+		return utf8Equals(nameIndex, VISIBLE_ANNOTATIONS) || utf8Equals(nameIndex, INVISIBLE_ANNOTATIONS);
+	}
+
+	private void readAnnotations(int pos, List<String> annotations) {
+		int count = u2(pos);
+		pos += 2;
+
+		for (int annotation = 0; annotation < count; annotation++) {
+			annotations.add(descriptorName(u2(pos)));
+			pos = skipAnnotation(pos);
+		}
+	}
+
+	/**
+	 * @return - the position after the annotation starting at pos
+	 */
+	private int skipAnnotation(int pos) {
+		int pairs = u2(pos + 2);
+		pos += 4;
+
+		for (int pair = 0; pair < pairs; pair++) {
+			pos = skipElementValue(pos + 2);
+		}
+
+		return pos;
+	}
+
+	private int skipElementValue(int pos) {
+		int tag = bytes[pos];
+
+		switch (tag) {
+			case 'e':
+				return pos + 5;
+			case '@':
+				return skipAnnotation(pos + 1);
+			case '[':
+				int values = u2(pos + 1);
+				pos += 3;
+
+				for (int value = 0; value < values; value++) {
+					pos = skipElementValue(pos);
+				}
+
+				return pos;
+			default: // constants and classes
+				return pos + 3;
+		}
+	}
+
+	/**
+	 * Compares a UTF8 constant against some ASCII without decoding it.
+	 */
+	private boolean utf8Equals(int index, byte[] expected) {
+		int pos = offsets[index];
+
+		if (bytes[pos] != CONSTANT_UTF8 || u2(pos + 1) != expected.length) {
+			return false;
+		}
+
+		for (int count = 0; count < expected.length; count++) {
+			if (bytes[pos + 3 + count] != expected[count]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return - the dotted name of a CONSTANT_Class
+	 */
+	private String className(int classIndex) {
+		int utf8 = u2(offsets[classIndex] + 1);
+		int pos = offsets[utf8];
+
+		return decode(pos + 3, u2(pos + 1));
+	}
+
+	/**
+	 * @return - the dotted name from a field descriptor such as Lcom/acme/Fred;
+	 */
+	private String descriptorName(int utf8) {
+		int pos = offsets[utf8];
+		int len = u2(pos + 1);
+
+		if (len > 2 && bytes[pos + 3] == 'L' && bytes[pos + 2 + len] == ';') {
+			return decode(pos + 4, len - 2);
+		}
+
+		return decode(pos + 3, len);
+	}
+
+	/**
+	 * Decodes modified UTF-8, turning / into .
+	 */
+	private String decode(int pos, int len) {
+		if (chars.length < len) {
+			chars = new char[len];
+		}
+
+		int end = pos + len;
+		int count = 0;
+
+		while (pos < end) {
+			int b = bytes[pos++] & 0xff;
+			char c;
+
+			if (b < 0x80) {
+				c = (char)b;
+			} else if ((b & 0xE0) == 0xC0) {
+				c = (char)(((b & 0x1F) << 6) | (bytes[pos++] & 0x3F));
+			} else {
+				c = (char)(((b & 0x0F) << 12) | ((bytes[pos++] & 0x3F) << 6) | (bytes[pos++] & 0x3F));
+			}
+
+			chars[count++] = c == '/' ? '.' : c;
+		}
+
+		return new String(chars, 0, count);
+	}
+
+	private int u2(int pos) {
+		return ((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff);
+	}
+
+	private int s4(int pos) {
+		return ((bytes[pos] & 0xff) << 24) | ((bytes[pos + 1] & 0xff) << 16) | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+	}
+
+	private static byte[] ascii(String text) {
+		byte[] result = new byte[text.length()];
+
+		for (int count = 0; count < result.length; count++) {
+			result[count] = (byte)text.charAt(count);
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,269 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers "all subclasses of C" and "all implementors of I" for a scanned classpath without loading any classes. The
+ * superclass and interface names of each parsed class are recorded as edges between dense class ids in plain int
+ * arrays, and turned into a compact reverse adjacency table (parent to children) the first time a query is made. When
+ * parent loaders are scanned, the answers include the classes of the parents, and our classes that extend theirs.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ClassHierarchyIndex {
+	private final ClassIdTable classes;
+
+	/**
+	 * The index of the parent loader's classpath, if parents are being scanned. Its classes never refer to ours.
+	 */
+	private final ClassHierarchyIndex parent;
+
+	/**
+	 * Each edge goes from a class to one of its direct supertypes
+	 */
+	private int[] edgeFrom = new int[1024];
+	private int[] edgeTo = new int[1024];
+	private int edgeCount;
+
+	/**
+	 * The edges that go to a superclass rather than an interface
+	 */
+	private final BitSet superclassEdges = new BitSet();
+
+	private final BitSet interfaces = new BitSet();
+	private final BitSet scanned = new BitSet();
+
+	/**
+	 * The reverse edges, the edges to the children of id are in children[childStart[id]] to
+	 * children[childStart[id + 1] - 1]
+	 */
+	private int[] childStart;
+	private int[] children;
+	private int frozenEdges = -1;
+
+	ClassHierarchyIndex(ClassIdTable classes, ClassHierarchyIndex parent) {
+		this.classes = classes;
+		this.parent = parent;
+	}
+
+	/**
+	 * Called as each class is parsed, the caller holds the lock on the class table.
+	 */
+	void add(int classId, ClassFileInfo classInfo) {
+		synchronized (this) {
+			scanned.set(classId);
+
+			if (classInfo.isInterface()) {
+				interfaces.set(classId);
+			}
+
+			if (classInfo.superclassName != null) {
+				superclassEdges.set(edgeCount);
+				edge(classId, classes.id(classInfo.superclassName));
+			}
+
+			for (String interfaceName : classInfo.interfaceNames) {
+				edge(classId, classes.id(interfaceName));
+			}
+		}
+	}
+
+	private void edge(int from, int to) {
+		if (edgeCount == edgeFrom.length) {
+			edgeFrom = grow(edgeFrom);
+			edgeTo = grow(edgeTo);
+		}
+
+		edgeFrom[edgeCount] = from;
+		edgeTo[edgeCount] = to;
+		edgeCount++;
+	}
+
+	private static int[] grow(int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 * Builds the reverse adjacency table if any classes have been added since the last query.
+	 */
+	private void freeze(int classCount) {
+		if (frozenEdges == edgeCount && childStart != null && childStart.length == classCount + 1) {
+			return;
+		}
+
+		int[] start = new int[classCount + 1];
+
+		for (int edge = 0; edge < edgeCount; edge++) {
+			start[edgeTo[edge] + 1]++;
+		}
+
+		for (int id = 0; id < classCount; id++) {
+			start[id + 1] += start[id];
+		}
+
+		int[] fill = new int[classCount];
+		int[] reverse = new int[edgeCount];
+
+		for (int edge = 0; edge < edgeCount; edge++) {
+			int parent = edgeTo[edge];
+
+			reverse[start[parent] + fill[parent]++] = edge;
+		}
+
+		childStart = start;
+		children = reverse;
+		frozenEdges = edgeCount;
+	}
+
+	/**
+	 * @param typeName - the dotted name of a class or interface
+	 * @return - every class and interface that extends or implements it, directly or not
+	 */
+	public List<String> getSubtypes(String typeName) {
+		return subtypes(typeName, false, false);
+	}
+
+	/**
+	 * @param className - the dotted name of a class
+	 * @return - every class that extends it, directly or not, only following superclasses
+	 */
+	public List<String> getSubclasses(String className) {
+		return subtypes(className, true, true);
+	}
+
+	/**
+	 * @param interfaceName - the dotted name of an interface
+	 * @return - every class (not interface) that implements it, including through sub-interfaces and superclasses
+	 */
+	public List<String> getImplementors(String interfaceName) {
+		return subtypes(interfaceName, true, false);
+	}
+
+	/**
+	 * @return - true if subtype extends or implements supertype, directly or not
+	 */
+	public boolean isSubtypeOf(String subtype, String supertype) {
+		if (parent != null) {
+			return !subtype.equals(supertype) && getSubtypes(supertype).contains(subtype);
+		}
+
+		synchronized (classes) {
+			int sub = classes.find(subtype);
+			int sup = classes.find(supertype);
+
+			if (sub < 0 || sup < 0 || sub == sup) {
+				return false;
+			}
+
+			synchronized (this) {
+				freeze(classes.size());
+
+				return reachable(sup, false).get(sub);
+			}
+		}
+	}
+
+	/**
+	 * @return - the number of classes that were actually scanned, as opposed to just referred to
+	 */
+	public int getScannedClassCount() {
+		int inherited = parent == null ? 0 : parent.getScannedClassCount();
+
+		synchronized (this) {
+			return inherited + scanned.cardinality();
+		}
+	}
+
+	/**
+	 * Our classes can extend the parent's, so as well as the type itself we walk from every subtype the parent has.
+	 */
+	private List<String> subtypes(String typeName, boolean classesOnly, boolean superclassesOnly) {
+		List<String> inherited = Collections.emptyList();
+		List<String> from = Collections.emptyList();
+
+		if (parent != null) {
+			inherited = parent.subtypes(typeName, classesOnly, superclassesOnly);
+			from = classesOnly ? parent.subtypes(typeName, false, superclassesOnly) : inherited;
+		}
+
+		synchronized (classes) {
+			BitSet found = new BitSet();
+
+			synchronized (this) {
+				freeze(classes.size());
+
+				int id = classes.find(typeName);
+
+				if (id >= 0) {
+					found.or(reachable(id, superclassesOnly));
+				}
+
+				for (String supertype : from) {
+					id = classes.find(supertype);
+
+					if (id >= 0) {
+						found.or(reachable(id, superclassesOnly));
+					}
+				}
+
+				if (classesOnly) {
+					found.andNot(interfaces);
+				}
+			}
+
+			List<String> names = new ArrayList<>(found.cardinality());
+
+			for (int sub = found.nextSetBit(0); sub >= 0; sub = found.nextSetBit(sub + 1)) {
+				names.add(classes.name(sub));
+			}
+
+			return AnnotationIndex.inherited(inherited, names);
+		}
+	}
+
+	/**
+	 * Walks the reverse edges from the type, using an int array as the work stack.
+	 *
+	 * @param superclassesOnly - only follow the edges from a class to its superclass
+	 */
+	private BitSet reachable(int id, boolean superclassesOnly) {
+		BitSet found = new BitSet();
+		int[] stack = new int[16];
+		int top = 0;
+
+		stack[top++] = id;
+
+		while (top > 0) {
+			int parent = stack[--top];
+
+			for (int pos = childStart[parent]; pos < childStart[parent + 1]; pos++) {
+				int edge = children[pos];
+
+				if (superclassesOnly && !superclassEdges.get(edge)) {
+					continue;
+				}
+
+				int child = edgeFrom[edge];
+
+				if (!found.get(child)) {
+					found.set(child);
+
+					if (top == stack.length) {
+						stack = grow(stack);
+					}
+
+					stack[top++] = child;
+				}
+			}
+		}
+
+		found.clear(id);
+
+		return found;
+	}
+}
@@ -0,0 +1,49 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives each class name a dense integer id (0, 1, 2...) so the class indexes can use bitsets and int arrays rather
+ * than sets of names. Not thread safe, the indexes that share it do their own locking.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ClassIdTable {
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+
+	/**
+	 * @return - the id of the class, giving it one if it doesn't have one yet
+	 */
+	int id(String className) {
+		Integer id = ids.get(className);
+
+		if (id == null) {
+			id = names.size();
+			ids.put(className, id);
+			names.add(className);
+		}
+
+		return id;
+	}
+
+	/**
+	 * @return - the id of the class or -1 if we've never heard of it
+	 */
+	int find(String className) {
+		Integer id = ids.get(className);
+
+		return id == null ? -1 : id;
+	}
+
+	String name(int id) {
+		return names.get(id);
+	}
+
+	int size() {
+		return names.size();
+	}
+}
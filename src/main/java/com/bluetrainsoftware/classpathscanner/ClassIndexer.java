@@ -0,0 +1,64 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * The scanner's own listener, it is given every class on a classpath once and builds the class indexes from them.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ClassIndexer implements ClassScanListener, FilteredResourceScanListener, ConcurrentResourceScanListener {
+	private static final ResourceFilter CLASSES = new ResourceFilter().suffix(".class");
+
+	private final ClassIdTable classes = new ClassIdTable();
+	final AnnotationIndex annotationIndex;
+	final ClassHierarchyIndex hierarchyIndex;
+
+	/**
+	 * @param parent - the indexer of the parent loader's classpath when parents are being scanned, its classes are
+	 *               included in the answers of our indexes
+	 */
+	ClassIndexer(boolean indexAnnotations, boolean indexHierarchy, ClassIndexer parent) {
+		annotationIndex = indexAnnotations ? new AnnotationIndex(classes, parent == null ? null : parent.annotationIndex) : null;
+		hierarchyIndex = indexHierarchy ? new ClassHierarchyIndex(classes, parent == null ? null : parent.hierarchyIndex) : null;
+	}
+
+	@Override
+	public ResourceFilter getResourceFilter() {
+		return CLASSES;
+	}
+
+	@Override
+	public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+		return scanResources;
+	}
+
+	@Override
+	public void deliverClass(ScanResource desire, ClassFileInfo classInfo) {
+		synchronized (classes) {
+			int id = classes.id(classInfo.className);
+
+			if (annotationIndex != null) {
+				annotationIndex.add(id, classInfo);
+			}
+
+			if (hierarchyIndex != null) {
+				hierarchyIndex.add(id, classInfo);
+			}
+		}
+	}
+
+	@Override
+	public void deliver(ScanResource desire, InputStream inputStream) {
+	}
+
+	@Override
+	public InterestAction isInteresting(InterestingResource interestingResource) {
+		return InterestAction.ONCE;
+	}
+
+	@Override
+	public void scanAction(ScanAction action) {
+	}
+}
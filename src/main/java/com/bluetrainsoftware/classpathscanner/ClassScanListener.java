@@ -0,0 +1,18 @@
+package com.bluetrainsoftware.classpathscanner;
+
+/**
+ * A listener that wants the structure of the .class resources it asks for rather than their bytes. Each class is
+ * parsed once no matter how many listeners ask for it, resources that are not classes are still delivered as
+ * streams.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public interface ClassScanListener extends ResourceScanListener {
+	/**
+	 * Provides the parsed class.
+	 *
+	 * @param desire - the info on the resource wanted
+	 * @param classInfo - the class, as read from its bytes
+	 */
+	void deliverClass(ScanResource desire, ClassFileInfo classInfo);
+}
@@ -0,0 +1,354 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URLClassLoader;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the scan state of each class loader that has been scanned. Loaders are only weakly held, so when a webapp is
+ * undeployed its loader (and its scan state) can be collected, and the number of loaders retained is bounded - the
+ * least recently used is dropped when there are too many. A dropped loader that is still in use keeps a note of
+ * what its listeners have been told, so scanning it again doesn't tell them again. It is safe to use from any number
+ * of threads.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ClasspathRegistry {
+	public static final String MAX_RETAINED_PROPERTY = "classpathscanner.maxRetained";
+
+	/**
+	 * A class loader compared by identity, weakly held when it is a key in the map
+	 */
+	private static class LoaderKey extends WeakReference<ClassLoader> {
+		private final int hash;
+
+		LoaderKey(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+			super(loader, queue);
+			this.hash = System.identityHashCode(loader);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+
+			if (!(o instanceof LoaderKey)) {
+				return false;
+			}
+
+			ClassLoader loader = get();
+
+			return loader != null && loader == ((LoaderKey) o).get();
+		}
+	}
+
+	private static class Entry {
+		final ClasspathScanner.Classpath classpath;
+		volatile long lastUsed;
+
+		Entry(ClasspathScanner.Classpath classpath, long lastUsed) {
+			this.classpath = classpath;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	private final ConcurrentMap<LoaderKey, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * What the listeners of evicted loaders had been told, until they are scanned again or collected
+	 */
+	private final ConcurrentMap<LoaderKey, ClasspathScanner.ListenersTold> evictedTold = new ConcurrentHashMap<>();
+	private final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<>();
+	private final AtomicLong clock = new AtomicLong();
+
+	private final AtomicLong collected = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong released = new AtomicLong();
+
+	private volatile int maxRetained = Integer.getInteger(MAX_RETAINED_PROPERTY, 256);
+
+	ClasspathScanner.Classpath get(ClassLoader loader) {
+		expunge();
+
+		Entry entry = entries.get(new LoaderKey(loader, null));
+
+		if (entry == null) {
+			return null;
+		}
+
+		entry.lastUsed = clock.incrementAndGet();
+
+		return entry.classpath;
+	}
+
+	synchronized void put(ClassLoader loader, ClasspathScanner.Classpath classpath) {
+		expunge();
+
+		evictedTold.remove(new LoaderKey(loader, null));
+
+		Entry previous = entries.put(new LoaderKey(loader, collectedLoaders), new Entry(classpath, clock.incrementAndGet()));
+
+		if (previous != null && previous.classpath != classpath) {
+			previous.classpath.release();
+		}
+
+		evictIfTooMany();
+	}
+
+	/**
+	 * Registers the classpath unless another thread has beaten us to it. If the loader was evicted the new classpath
+	 * takes over what its listeners had been told.
+	 *
+	 * @return - the classpath that was already registered, or null if ours was
+	 */
+	synchronized ClasspathScanner.Classpath putIfAbsent(ClassLoader loader, ClasspathScanner.Classpath classpath) {
+		expunge();
+
+		Entry existing = entries.get(new LoaderKey(loader, null));
+
+		if (existing != null) {
+			existing.lastUsed = clock.incrementAndGet();
+
+			return existing.classpath;
+		}
+
+		ClasspathScanner.ListenersTold told = evictedTold.remove(new LoaderKey(loader, null));
+
+		if (told != null) {
+			classpath.carryOver(told);
+		}
+
+		entries.put(new LoaderKey(loader, collectedLoaders), new Entry(classpath, clock.incrementAndGet()));
+
+		evictIfTooMany();
+
+		return null;
+	}
+
+	/**
+	 * Forgets the scan state of a loader, e.g. when its webapp is undeployed, rather than waiting for it to be collected.
+	 *
+	 * @return - true if the loader had been scanned
+	 */
+	public boolean release(ClassLoader loader) {
+		boolean evicted = evictedTold.remove(new LoaderKey(loader, null)) != null;
+		Entry entry = entries.remove(new LoaderKey(loader, null));
+
+		if (entry == null) {
+			return evicted;
+		}
+
+		released.incrementAndGet();
+		entry.classpath.release();
+
+		return true;
+	}
+
+	/**
+	 * Lets go of an unregistered listener, in the classpaths held and the notes kept for evicted ones.
+	 */
+	synchronized void forget(ResourceScanListener listener) {
+		for (Entry entry : entries.values()) {
+			entry.classpath.forget(listener);
+		}
+
+		for (ClasspathScanner.ListenersTold told : evictedTold.values()) {
+			told.forget(listener);
+		}
+	}
+
+	Collection<ClasspathScanner.Classpath> values() {
+		expunge();
+
+		List<ClasspathScanner.Classpath> classpaths = new ArrayList<>(entries.size());
+
+		for (Entry entry : entries.values()) {
+			classpaths.add(entry.classpath);
+		}
+
+		return classpaths;
+	}
+
+	/**
+	 * Drops the state of loaders that have been collected.
+	 */
+	private void expunge() {
+		Object key;
+
+		while ((key = collectedLoaders.poll()) != null) {
+			evictedTold.remove(key);
+
+			Entry entry = entries.remove(key);
+
+			if (entry != null) {
+				collected.incrementAndGet();
+				entry.classpath.release();
+			}
+		}
+	}
+
+	/**
+	 * Drops the least recently used loaders that aren't being scanned until there are few enough, remembering what
+	 * their listeners have been told.
+	 */
+	private synchronized void evictIfTooMany() {
+		while (entries.size() > maxRetained) {
+			Map.Entry<LoaderKey, Entry> oldest = null;
+
+			for (Map.Entry<LoaderKey, Entry> candidate : entries.entrySet()) {
+				if (!candidate.getValue().classpath.isScanning() && (oldest == null || candidate.getValue().lastUsed < oldest.getValue().lastUsed)) {
+					oldest = candidate;
+				}
+			}
+
+			if (oldest == null) {
+				return; // they are all busy, we will try again next time
+			}
+
+			if (entries.remove(oldest.getKey(), oldest.getValue())) {
+				ClassLoader loader = oldest.getKey().get();
+
+				if (loader != null) {
+					evictedTold.put(new LoaderKey(loader, collectedLoaders), oldest.getValue().classpath.listenersTold());
+				}
+
+				evicted.incrementAndGet();
+				oldest.getValue().classpath.release();
+			}
+		}
+	}
+
+	/**
+	 * The registry as the map ClasspathScanner.resources used to be, for code written against it. Reads and writes go
+	 * through to the registry, the entries are a copy.
+	 */
+	Map<URLClassLoader, ClasspathScanner.Classpath> asMap() {
+		return new AbstractMap<URLClassLoader, ClasspathScanner.Classpath>() {
+			@Override
+			public ClasspathScanner.Classpath get(Object key) {
+				return key instanceof ClassLoader ? ClasspathRegistry.this.get((ClassLoader) key) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return get(key) != null;
+			}
+
+			@Override
+			public ClasspathScanner.Classpath put(URLClassLoader key, ClasspathScanner.Classpath value) {
+				ClasspathScanner.Classpath previous = get(key);
+
+				ClasspathRegistry.this.put(key, value);
+
+				return previous;
+			}
+
+			@Override
+			public ClasspathScanner.Classpath remove(Object key) {
+				ClasspathScanner.Classpath previous = get(key);
+
+				if (previous != null) {
+					release((ClassLoader) key);
+				}
+
+				return previous;
+			}
+
+			@Override
+			public void clear() {
+				for (Map.Entry<URLClassLoader, ClasspathScanner.Classpath> entry : entrySet()) {
+					release(entry.getKey());
+				}
+			}
+
+			@Override
+			public Set<Map.Entry<URLClassLoader, ClasspathScanner.Classpath>> entrySet() {
+				expunge();
+
+				Set<Map.Entry<URLClassLoader, ClasspathScanner.Classpath>> copy = new HashSet<>();
+
+				for (Map.Entry<LoaderKey, ClasspathRegistry.Entry> entry : entries.entrySet()) {
+					ClassLoader loader = entry.getKey().get();
+
+					if (loader instanceof URLClassLoader) {
+						copy.add(new SimpleImmutableEntry<>((URLClassLoader) loader, entry.getValue().classpath));
+					}
+				}
+
+				return copy;
+			}
+		};
+	}
+
+	public int getMaxRetained() {
+		return maxRetained;
+	}
+
+	/**
+	 * @param maxRetained - the most class loaders to keep scan state for, the least recently scanned go first
+	 */
+	public void setMaxRetained(int maxRetained) {
+		this.maxRetained = maxRetained;
+
+		evictIfTooMany();
+	}
+
+	/**
+	 * @return - the number of class loaders scan state is being held for
+	 */
+	public int getRetainedClasspaths() {
+		expunge();
+
+		return entries.size();
+	}
+
+	/**
+	 * @return - the number of directories and jars scan state is being held for, across all of the class loaders
+	 */
+	public int getRetainedResources() {
+		int resources = 0;
+
+		for (ClasspathScanner.Classpath classpath : values()) {
+			resources += classpath.classpaths.size();
+		}
+
+		return resources;
+	}
+
+	/**
+	 * @return - the number of class loaders whose scan state was dropped because they were garbage collected
+	 */
+	public long getCollected() {
+		return collected.get();
+	}
+
+	/**
+	 * @return - the number of class loaders whose scan state was dropped because too many were being held
+	 */
+	public long getEvicted() {
+		return evicted.get();
+	}
+
+	/**
+	 * @return - the number of class loaders whose scan state was explicitly released
+	 */
+	public long getReleased() {
+		return released.get();
+	}
+}
@@ -6,8 +6,13 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -17,6 +22,7 @@ import java.util.jar.JarFile;
 public class ClasspathResource {
 	private final static Logger log = LoggerFactory.getLogger(ClasspathResource.class);
 	private static final int MAX_RESOURCES = 3000;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 
 	/**
 	 * The original resources.
@@ -34,222 +40,1347 @@ public class ClasspathResource {
 	private boolean onlyNullJarOffset;
 
 
+	/**
+	 * Filtered listeners get a bit each in a resource's interest mask, any past the overflow bit share it and are
+	 * checked again when their resources are handed out. The top bit means someone wants everything.
+	 */
+	private static final int OVERFLOW_BIT = 62;
+	private static final long UNFILTERED = 1L << 63;
+
 	class ListenerInterest {
 		final public ResourceScanListener listener;
 		final public ResourceScanListener.InterestAction action;
+		final public ResourceFilter filter;
+		int bit;
+
+		/**
+		 * An incremental listener that has already seen everything and now only gets what changed
+		 */
+		boolean delta;
 
-		ListenerInterest(ResourceScanListener listener, ResourceScanListener.InterestAction action) {
+		ListenerInterest(ResourceScanListener listener, ResourceScanListener.InterestAction action, ResourceFilter filter) {
 			this.listener = listener;
 			this.action = action;
+			this.filter = filter;
 		}
 	}
 
 	class OffsetListener implements Comparable<OffsetListener> {
 		public ResourceScanListener.InterestingResource interestingResource;
 		public String jarOffset;
+		public byte[] jarOffsetBytes;
+		ByteLiteral jarOffsetLiteral = ByteLiteral.EMPTY;
 		public List<ListenerInterest> listeners = new ArrayList<>();
 
-		@Override
-		public int compareTo(OffsetListener o) {
-			return o.jarOffset.compareTo(jarOffset);
+		private boolean unfiltered;
+		private int filtered;
+
+		/**
+		 * The filters of the listeners with bits compiled together, for names as text and as raw bytes
+		 */
+		private FilterAutomaton automaton;
+		private FilterAutomaton rawAutomaton;
+
+		/**
+		 * The cursor listeners, and the bits of those that have one to themselves
+		 */
+		private List<ListenerInterest> cursors;
+		private long cursorMask;
+
+		/**
+		 * What the names of everything the listeners could want start with, null if they could want anything
+		 */
+		private List<String> roots;
+
+		/**
+		 * The bits of the listeners that only want changes, and the changes they have been offered so far this scan
+		 */
+		private long deltaMask;
+		private List<ResourceScanListener.ScanResource> added;
+		private List<ResourceScanListener.ScanResource> modified;
+		private List<ResourceScanListener.ScanResource> removed;
+
+		@Override
+		public int compareTo(OffsetListener o) {
+			return o.jarOffset.compareTo(jarOffset);
+		}
+
+		/**
+		 * Hands out the interest bits, listeners come and go between scans so this is done before each one.
+		 */
+		void prepareFilters(ResourceSnapshot snapshot) {
+			unfiltered = false;
+			filtered = 0;
+			deltaMask = 0;
+			cursors = null;
+			cursorMask = 0;
+
+			for (ListenerInterest interest : listeners) {
+				// delta listeners need a bit of their own, if we have run out they just get everything
+				interest.delta = snapshot != null && snapshot.caughtUp.contains(interest.listener) && filtered < OVERFLOW_BIT;
+
+				// cursor listeners always have a bit, so they are only shown what they asked for
+				boolean cursor = interest.listener instanceof CursorResourceScanListener;
+
+				if (interest.filter == null && !interest.delta && !cursor) {
+					unfiltered = true;
+					interest.bit = -1;
+				} else {
+					interest.bit = Math.min(filtered++, OVERFLOW_BIT);
+
+					if (interest.delta) {
+						deltaMask |= 1L << interest.bit;
+					}
+				}
+
+				if (cursor) {
+					if (cursors == null) {
+						cursors = new ArrayList<>();
+					}
+
+					cursors.add(interest);
+
+					if (interest.bit < OVERFLOW_BIT) {
+						cursorMask |= 1L << interest.bit;
+					}
+				}
+			}
+
+			automaton = new FilterAutomaton(false);
+			rawAutomaton = new FilterAutomaton(true);
+
+			for (ListenerInterest interest : listeners) {
+				if (interest.bit >= 0) {
+					automaton.add(interest.filter, interest.bit);
+					rawAutomaton.add(interest.filter, interest.bit);
+				}
+			}
+
+			roots = new ArrayList<>();
+
+			for (ListenerInterest interest : listeners) {
+				List<String> filterRoots = interest.filter == null ? null : interest.filter.roots();
+
+				if (filterRoots == null) {
+					roots = null;
+					break;
+				}
+
+				roots.addAll(filterRoots);
+			}
+
+			if (deltaMask != 0) {
+				added = new ArrayList<>();
+				modified = new ArrayList<>();
+				removed = new ArrayList<>();
+			} else {
+				added = modified = removed = null;
+			}
+		}
+
+		/**
+		 * Tests a name against all of the filters in one pass over it.
+		 *
+		 * @param change - how the resource differs from the last scan, delta listeners only want it if it has changed
+		 * @return - the interest mask, 0 if no-one wants this resource
+		 */
+		long interest(CharSequence name, int start, int end, boolean rawName, int change) {
+			if (filtered == 0) {
+				return UNFILTERED;
+			}
+
+			if (end > start && name.charAt(end - 1) == '/') {
+				end --;
+			}
+
+			long mask = (unfiltered ? UNFILTERED : 0) | (rawName ? rawAutomaton : automaton).match(name, start, end);
+
+			// delta listeners only want what has changed
+			return change == ResourceSnapshot.UNCHANGED ? mask & ~deltaMask : mask;
+		}
+
+		/**
+		 * @param directory - a / separated directory name, without a leading or trailing /
+		 * @return - false if nothing under the directory can be wanted by any of the listeners
+		 */
+		boolean couldContain(String directory) {
+			if (roots == null) {
+				return true;
+			}
+
+			for (String root : roots) {
+				if (root.length() > directory.length()) {
+					if (root.startsWith(directory) && root.charAt(directory.length()) == '/') {
+						return true;
+					}
+				} else if (directory.startsWith(root)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * Remembers a changed resource for the delta listeners that were offered it.
+		 */
+		void changed(ResourceScanListener.ScanResource scanResource, int change) {
+			if (change != ResourceSnapshot.UNCHANGED && (scanResource.interest & deltaMask) != 0) {
+				(change == ResourceSnapshot.ADDED ? added : modified).add(scanResource);
+			}
+		}
+	}
+
+	/**
+	 * Used to store the offset(s) in the classesSource, there can be multiple offsets for
+	 * one single file in a URL Class Path (e.g. Bathe Booter/Plugin)
+	 */
+	private Set<OffsetListener> jarOffsets = new TreeSet<>();
+
+	/**
+	 * What we found last time, only kept while there are incremental listeners
+	 */
+	private ResourceSnapshot snapshot;
+
+	/**
+	 * Keeps track of what changes in a directory between scans, if it is being watched
+	 */
+	private DirectoryWatcher watcher;
+
+	/**
+	 * The jars found inside this one during the current scan, null unless nested jars are being scanned
+	 */
+	private List<NestedJar> nestedJars;
+
+	/**
+	 * The configuration of a parallel scan while it is running, large jars are split across threads
+	 */
+	private ScanConfiguration splitting;
+
+	/**
+	 * Can the parts of the directory or jar that no listener could want be skipped in this scan. They can't if the
+	 * snapshot has to see everything, or we are looking for jars inside the jar.
+	 */
+	private boolean pruning;
+
+	/**
+	 * The jar entries (or for a directory, the subtrees) the last scan skipped
+	 */
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * Moved over the files of a directory, which is only ever walked by one thread at a time
+	 */
+	private final ResourceCursor fileCursor = new ResourceCursor();
+
+	/**
+	 * Hands batches to the listeners on other threads while a pipelined scan is running
+	 */
+	private ScanPipeline pipeline;
+
+	/**
+	 * A run of entries in a jar's listing
+	 */
+	private interface EntryRange {
+		void process(List<ResourceScanListener.ScanResource> scanResources, int start, int end);
+	}
+
+	/**
+	 * A jar inside the jar (e.g. in WEB-INF/lib), and the offset it was found in
+	 */
+	static class NestedJar {
+		final String name;
+		final OffsetListener offsetListener;
+
+		NestedJar(String name, OffsetListener offsetListener) {
+			this.name = name;
+			this.offsetListener = offsetListener;
+		}
+	}
+
+
+	/**
+	 * Allows us to keep a track of who is interested in this classpath artifact
+	 *
+	 * @param listeners
+	 */
+	public synchronized void askListeners(List<ResourceScanListener> listeners) {
+		if (jarOffsets.size() == 0) {
+			OffsetListener offsetListener = new OffsetListener();
+
+			offsetListener.jarOffset = "";
+			offsetListener.jarOffsetBytes = new byte[0];
+			offsetListener.interestingResource = new ResourceScanListener.InterestingResource(url);
+
+			jarOffsets.add(offsetListener);
+
+			onlyNullJarOffset = true;
+		}
+
+		for (ResourceScanListener listener : listeners) {
+			try {
+				for (OffsetListener offsetListener : jarOffsets) {
+					ResourceScanListener.InterestAction interestAction = listener.isInteresting(offsetListener.interestingResource);
+
+					if (interestAction != ResourceScanListener.InterestAction.NONE) {
+						ResourceFilter filter = listener instanceof FilteredResourceScanListener ? ((FilteredResourceScanListener) listener).getResourceFilter() : null;
+
+						offsetListener.listeners.add(new ListenerInterest(listener, interestAction, filter));
+					}
+				}
+			} catch (Exception ex) {
+				throw new RuntimeException("Failed to ask listener for interest " + listener.getClass().getName() + ": " + ex.getMessage(), ex);
+			}
+		}
+	}
+
+	/**
+	 * Where the contents of the resources we hand out come from.
+	 */
+	interface ContentSource {
+		/**
+		 * @return - the stream for the resource, or null if it has no content (e.g. a directory)
+		 */
+		InputStream open(ResourceScanListener.ScanResource resource) throws IOException;
+	}
+
+	private static final ContentSource FILE_CONTENT = new ContentSource() {
+		@Override
+		public InputStream open(ResourceScanListener.ScanResource resource) throws IOException {
+			boolean regular = resource.attributes == null ? resource.file.isFile() : resource.attributes.isRegularFile();
+
+			return regular ? new FileInputStream(resource.file) : null;
+		}
+	};
+
+	/**
+	 * Spelunks through the classpath looking for the resources. Different resources may be spelunked on different
+	 * threads at the same time, listeners are only called concurrently if they ask for it.
+	 */
+	public void fireListeners() {
+		fireListeners(new ScanConfiguration());
+	}
+
+	/**
+	 * Spelunks through the classpath looking for the resources using the options given.
+	 *
+	 * @param configuration - how the scan should be done
+	 */
+	public synchronized void fireListeners(ScanConfiguration configuration) {
+		if (jarOffsets.size() == 0 || (jarOffsets.size() == 1 && jarOffsets.iterator().next().listeners.size() == 0)) {
+			return; // no-one is interested
+		}
+
+		List<ResourceScanListener.ScanResource> scanResources = new ArrayList<>(MAX_RESOURCES);
+
+		for (OffsetListener offsetListener : jarOffsets) {
+			offsetListener.prepareFilters(snapshot);
+		}
+
+		// a watched directory we have seen before only needs to look at what changed
+		Set<String> changes = watcher != null && snapshot != null && snapshot.hasPrevious() ? watcher.drain() : null;
+
+		if (!beginSnapshot(changes)) {
+			return; // the jar is unchanged and everyone only wants changes
+		}
+
+		pipeline = configuration.isPipelined() ? new ScanPipeline(configuration.getExecutor(), configuration.getPipelineDepth()) : null;
+		pruning = !recording() && !configuration.isScanNestedJars();
+		skipped.set(0);
+
+		try {
+			scan(configuration, scanResources, changes);
+
+			awaitDelivery();
+		} finally {
+			pipeline = null;
+		}
+
+		if (skipped.get() > 0) {
+			log.debug("{}: skipped {} that no listener could want", classesSource.getAbsolutePath(), skipped.get());
+		}
+
+		if (snapshot != null) {
+			finishSnapshot();
+		}
+	}
+
+	/**
+	 * @return - how many entries of a jar (or subtrees of a directory) the last scan skipped because none of the
+	 * listeners' filters could match anything in them
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * @return - true if every offset anyone is listening to has roots, so a jar only needs to be looked at under them
+	 */
+	private boolean prunesJar() {
+		if (!pruning) {
+			return false;
+		}
+
+		for (OffsetListener offsetListener : jarOffsets) {
+			if (offsetListener.listeners.size() > 0 && offsetListener.roots == null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Most listeners take every jar they are offered, so before a jar is listed its summary is checked against their
+	 * filters. If none of them could match anything in it there is no need to look any further.
+	 *
+	 * @return - true if the jar has been skipped
+	 */
+	private boolean noneCouldMatch(ScanConfiguration configuration) {
+		if (!pruning) {
+			return false;
+		}
+
+		for (OffsetListener offsetListener : jarOffsets) {
+			for (ListenerInterest interest : offsetListener.listeners) {
+				// a suffix could be anywhere, so there is no point getting the summary
+				if (interest.filter == null || !interest.filter.suffixes.isEmpty()) {
+					return false;
+				}
+			}
+		}
+
+		JarSummary summary;
+
+		try {
+			summary = SharedJarListings.shared.summary(classesSource, configuration.getScanIndex(), configuration.getJarEngine());
+		} catch (IOException e) {
+			return false; // the scan will report it
+		}
+
+		if (summary == null) {
+			return false;
+		}
+
+		for (OffsetListener offsetListener : jarOffsets) {
+			for (ListenerInterest interest : offsetListener.listeners) {
+				if (summary.couldMatch(interest.filter, offsetListener.jarOffset)) {
+					return false;
+				}
+			}
+		}
+
+		skipped.set(summary.size());
+
+		return true;
+	}
+
+	private void scan(ScanConfiguration configuration, List<ResourceScanListener.ScanResource> scanResources, Set<String> changes) {
+		if (classesSource.isDirectory()) {
+			OffsetListener listener = jarOffsets.iterator().next();
+
+			// only process if anyone is listening
+			if (listener.listeners.size() > 0) {
+				if (changes != null) {
+					processDirectoryChanges(scanResources, changes, listener);
+				} else if (configuration.getDirectoryIoPermits() > 0) {
+					processDirectoryConcurrently(scanResources, listener, new ConcurrentDirectoryWalker(configuration.getDirectoryIoPermits()));
+				} else if (configuration.isParallel()) {
+					processDirectoryConcurrently(scanResources, listener, new ConcurrentDirectoryWalker(configuration.getExecutor()));
+				} else {
+					processDirectory(scanResources, classesSource, "", listener);
+				}
+
+				fireListeners(scanResources, listener, FILE_CONTENT);
+			}
+		} else {
+			if (noneCouldMatch(configuration)) {
+				return;
+			}
+
+			nestedJars = configuration.isScanNestedJars() ? Collections.synchronizedList(new ArrayList<NestedJar>()) : null;
+			splitting = configuration.isParallel() ? configuration : null;
+
+			try {
+				if (configuration.getJarEngine() == ScanConfiguration.JarEngine.MAPPED) {
+					processMappedJarFile(scanResources, configuration.getScanIndex());
+				} else {
+					processJarFile(scanResources);
+				}
+
+				if (nestedJars != null && !nestedJars.isEmpty()) {
+					processNestedJars(scanResources, configuration.getExtractionCache());
+				}
+			} finally {
+				nestedJars = null;
+				splitting = null;
+			}
+		}
+	}
+
+	/**
+	 * @return - true if any listener wants everything rather than just the changes
+	 */
+	private boolean wantsEverything() {
+		for (OffsetListener offsetListener : jarOffsets) {
+			for (ListenerInterest interest : offsetListener.listeners) {
+				if (!interest.delta) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Starts recording what this scan finds if there are any incremental listeners or the directory is being watched. An
+	 * unchanged jar isn't recorded, all of its entries are unchanged.
+	 *
+	 * @param changes - the paths a watched directory says have changed, null if everything has to be looked at
+	 * @return - false if there is nothing to scan for
+	 */
+	private boolean beginSnapshot(Set<String> changes) {
+		boolean incremental = watcher != null;
+
+		for (OffsetListener offsetListener : jarOffsets) {
+			for (ListenerInterest interest : offsetListener.listeners) {
+				incremental = incremental || interest.listener instanceof IncrementalResourceScanListener;
+			}
+		}
+
+		if (!incremental) {
+			snapshot = null;
+			return true;
+		}
+
+		if (snapshot == null) {
+			snapshot = new ResourceSnapshot();
+		}
+
+		if (!classesSource.isDirectory()) {
+			FileFingerprint fingerprint = FileFingerprint.of(classesSource);
+
+			if (snapshot.hasPrevious() && fingerprint != null && fingerprint.equals(snapshot.fingerprint)) {
+				return wantsEverything();
+			}
+
+			snapshot.fingerprint = fingerprint;
+		}
+
+		if (changes != null) {
+			snapshot.beginChanges();
+		} else {
+			snapshot.begin();
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return - how the entry differs from the last scan, always unchanged if we aren't recording
+	 */
+	private int track(String name, long entryFingerprint) {
+		return recording() ? snapshot.track(name, entryFingerprint) : ResourceSnapshot.UNCHANGED;
+	}
+
+	private boolean recording() {
+		return snapshot != null && snapshot.isRecording();
+	}
+
+	/**
+	 * Works out what was removed and tells the delta listeners what changed.
+	 */
+	private void finishSnapshot() {
+		if (snapshot.isRecording()) {
+			boolean directory = classesSource.isDirectory();
+
+			for (String name : snapshot.finish()) {
+				// entries of nested jars are recorded as jar!/entry
+				int nested = directory ? -1 : name.indexOf("!/");
+				OffsetListener offsetListener = directory ? jarOffsets.iterator().next() : findOffsetListener(nested < 0 ? name : name.substring(0, nested));
+
+				if (offsetListener != null && offsetListener.deltaMask != 0) {
+					offsetListener.removed.add(directory
+						? new ResourceScanListener.ScanResource(url, new File(classesSource, name), name)
+						: nested < 0
+						? new ResourceScanListener.ScanResource(url, (JarEntry) null, resourceName(offsetListener.jarOffset.length(), name), offsetListener.interestingResource.url)
+						: new ResourceScanListener.ScanResource(url, (JarEntry) null, resourceName(0, name.substring(nested + 2)), nestedUrl(name.substring(0, nested))));
+				}
+			}
+		}
+
+		snapshot.caughtUp.clear();
+
+		for (OffsetListener offsetListener : jarOffsets) {
+			for (ListenerInterest interest : offsetListener.listeners) {
+				if (interest.delta) {
+					fireDelta(offsetListener, interest);
+				}
+
+				if (interest.listener instanceof IncrementalResourceScanListener) {
+					snapshot.caughtUp.add(interest.listener);
+				}
+			}
+		}
+	}
+
+	private void fireDelta(OffsetListener offsetListener, ListenerInterest interested) {
+		long bit = 1L << interested.bit;
+		List<ResourceScanListener.ScanResource> added = new ArrayList<>();
+		List<ResourceScanListener.ScanResource> modified = new ArrayList<>();
+		List<ResourceScanListener.ScanResource> removed = new ArrayList<>();
+
+		for (ResourceScanListener.ScanResource scanResource : offsetListener.added) {
+			if ((scanResource.interest & bit) != 0) {
+				added.add(scanResource);
+			}
+		}
+
+		for (ResourceScanListener.ScanResource scanResource : offsetListener.modified) {
+			if ((scanResource.interest & bit) != 0) {
+				modified.add(scanResource);
+			}
+		}
+
+		for (ResourceScanListener.ScanResource scanResource : offsetListener.removed) {
+			if (interested.filter == null || interested.filter.matches(scanResource.resourceName)) {
+				removed.add(scanResource);
+			}
+		}
+
+		ScanDelta delta = new ScanDelta(offsetListener.interestingResource.url, added, modified, removed);
+
+		if (delta.isEmpty()) {
+			return;
+		}
+
+		IncrementalResourceScanListener listener = (IncrementalResourceScanListener) interested.listener;
+
+		try {
+			if (listener instanceof ConcurrentResourceScanListener) {
+				listener.delta(delta);
+			} else {
+				synchronized (listener) {
+					listener.delta(delta);
+				}
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Unable to tell listener about changes", e);
+		}
+	}
+
+
+
+	protected void processDirectory(List<ResourceScanListener.ScanResource> scanResources, File dir, String packageName, OffsetListener listener) {
+		File[] files = dir.listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					// as long as it isn't a "hidden" directory
+
+					if (!file.getName().startsWith(".")) {
+						processFile(scanResources, packageName, listener, file); // jars and dirs need to be added as resources
+
+						String newPackageName = packageName;
+
+						if (packageName.length() > 0) {
+							newPackageName += "/";
+						}
+
+						newPackageName += file.getName();
+
+						if (!pruning || listener.couldContain(newPackageName)) {
+							processDirectory(scanResources, file, newPackageName, listener);
+						} else {
+							skipped.incrementAndGet();
+						}
+					}
+				} else {
+					processFile(scanResources, packageName, listener, file);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * The same as processDirectory, but the directories are listed many at a time on other threads and each file's
+	 * attributes are only read once, they are kept with its resource.
+	 */
+	private void processDirectoryConcurrently(final List<ResourceScanListener.ScanResource> scanResources, final OffsetListener listener, ConcurrentDirectoryWalker walker) {
+		final boolean recording = recording();
+
+		walker.walk(classesSource, new ConcurrentDirectoryWalker.Visitor() {
+			@Override
+			public void visit(String name, File file, BasicFileAttributes attributes) {
+				int change = recording ? track(name, fileFingerprint(file, attributes)) : ResourceSnapshot.UNCHANGED;
+
+				offerFile(scanResources, listener, file, name, change, attributes);
+			}
+
+			@Override
+			public boolean descend(String packageName) {
+				if (!pruning || listener.couldContain(packageName)) {
+					return true;
+				}
+
+				skipped.incrementAndGet();
+
+				return false;
+			}
+		});
+	}
+
+	private void processFile(List<ResourceScanListener.ScanResource> scanResources, String packageName, OffsetListener listener, File file) {
+		String name = packageName + "/" + file.getName();
+		int change = recording() ? track(name, fileFingerprint(file)) : ResourceSnapshot.UNCHANGED;
+
+		offerFile(scanResources, listener, file, name, change, null);
+	}
+
+	private static long fileFingerprint(File file) {
+		return file.isDirectory() ? ResourceSnapshot.DIRECTORY : ResourceSnapshot.fingerprint(file.lastModified(), file.length());
+	}
+
+	private static long fileFingerprint(File file, BasicFileAttributes attributes) {
+		if (attributes == null) {
+			return fileFingerprint(file);
+		}
+
+		return attributes.isDirectory() ? ResourceSnapshot.DIRECTORY : ResourceSnapshot.fingerprint(attributes.lastModifiedTime().toMillis(), attributes.size());
+	}
+
+	/**
+	 * Applies the changes a watcher has seen to the directory's snapshot instead of walking the tree. Listeners that
+	 * want everything are offered the rest of the snapshot as well.
+	 *
+	 * @param changes - / separated paths relative to the directory
+	 */
+	private void processDirectoryChanges(List<ResourceScanListener.ScanResource> scanResources, Set<String> changes, OffsetListener listener) {
+		Map<String, Integer> changed = new HashMap<>();
+
+		for (String path : changes) {
+			int slash = path.lastIndexOf('/');
+			// the same names processDirectory gives them
+			String name = (slash < 0 ? "" : path.substring(0, slash)) + "/" + path.substring(slash + 1);
+			File file = new File(classesSource, path);
+
+			if (!file.exists()) {
+				snapshot.remove(name);
+			} else if (!file.isDirectory() || !file.getName().startsWith(".")) {
+				changed.put(name, snapshot.track(name, fileFingerprint(file)));
+			}
+		}
+
+		Collection<String> names = wantsEverything() ? new ArrayList<>(snapshot.names()) : changed.keySet();
+
+		for (String name : names) {
+			Integer change = changed.get(name);
+
+			offerFile(scanResources, listener, new File(classesSource, name), name, change == null ? ResourceSnapshot.UNCHANGED : change, null);
+		}
+	}
+
+	private void offerFile(List<ResourceScanListener.ScanResource> scanResources, OffsetListener listener, File file, String name, int change,
+	                       BasicFileAttributes attributes) {
+		long interest = listener.interest(name, name.startsWith("/") ? 1 : 0, name.length(), false, change);
+
+		ResourceScanListener.ScanResource scanResource = interest == 0 ? null : found(fileCursor.file(url, file, name, attributes), listener, interest);
+
+		if (scanResource != null) {
+			scanResources.add(scanResource);
+			listener.changed(scanResource, change);
+		}
+
+		if (scanResources.size() >= MAX_RESOURCES) {
+			fireListeners(scanResources, listener, FILE_CONTENT);
+		}
+	}
+
+	/**
+	 * Shows the resource under the cursor to the cursor listeners that want it. A ScanResource is only made if a
+	 * listener that isn't a cursor listener wants it as well, or a cursor listener pinned it.
+	 *
+	 * @return - the resource to offer, or null if nobody needs one
+	 */
+	private ResourceScanListener.ScanResource found(ResourceCursor cursor, OffsetListener offsetListener, long interest) {
+		if (offsetListener.cursors != null) {
+			for (ListenerInterest interested : offsetListener.cursors) {
+				if ((interest & (1L << interested.bit)) != 0 && (interested.bit < OVERFLOW_BIT || interested.filter == null || interested.filter.matches(cursor.getName().toString()))) {
+					visit(cursor, interested.listener);
+				}
+			}
+
+			if ((interest & ~offsetListener.cursorMask) == 0 && !cursor.isPinned()) {
+				return null;
+			}
+		}
+
+		ResourceScanListener.ScanResource scanResource = cursor.resource();
+		scanResource.interest = interest;
+
+		return scanResource;
+	}
+
+	private void visit(ResourceCursor cursor, ResourceScanListener listener) {
+		cursor.visiting = listener;
+
+		try {
+			if (listener instanceof ConcurrentResourceScanListener) {
+				((CursorResourceScanListener) listener).visit(cursor);
+			} else {
+				synchronized (listener) {
+					((CursorResourceScanListener) listener).visit(cursor);
+				}
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Unable to show listener resource " + cursor.getName(), e);
+		}
+	}
+
+	/**
+	 * The JAR_FILE engine hands out the JarFile's own entries, so their attributes and certificates are there for the
+	 * listeners, which means the listing isn't shared with other class loaders.
+	 */
+	protected void processJarFile(List<ResourceScanListener.ScanResource> scanResources) {
+		final JarFile jarFile;
+		final JarEntry[] entries;
+
+		try {
+			jarFile = new JarFile(classesSource);
+		} catch (IOException e) {
+			log.error("You have a non jar-file resource on your classpath {}", classesSource.getAbsolutePath());
+
+			return;
+		}
+
+		List<JarEntry> listing = new ArrayList<>();
+		Enumeration<JarEntry> enumeration = jarFile.entries();
+
+		while (enumeration.hasMoreElements()) {
+			listing.add(enumeration.nextElement());
+		}
+
+		entries = listing.toArray(new JarEntry[listing.size()]);
+
+		// only a pruning scan asks for a summary, so there is no point making one otherwise
+		if (pruning) {
+			SharedJarListings.shared.remember(classesSource, entries);
+		}
+
+		final ContentSource content = new ContentSource() {
+			@Override
+			public InputStream open(ResourceScanListener.ScanResource resource) throws IOException {
+				synchronized (jarFile) {
+					return jarFile.getInputStream(resource.entry);
+				}
+			}
+		};
+
+		try {
+			if (prunesJar()) {
+				processJarRoots(scanResources, entries, content);
+			} else {
+				processEntries(scanResources, entries.length, new EntryRange() {
+					@Override
+					public void process(List<ResourceScanListener.ScanResource> scanResources, int start, int end) {
+						processJarRange(scanResources, entries, start, end, content);
+					}
+				});
+			}
+
+			awaitDelivery();
+		} finally {
+			synchronized (jarFile) {
+				try {
+					jarFile.close();
+				} catch (IOException e) {
+					log.error("Unable to close jar file {}", classesSource);
+				}
+			}
+		}
+	}
+
+	private void processJarRange(List<ResourceScanListener.ScanResource> scanResources, JarEntry[] entries, int start, int end, ContentSource content) {
+		ResourceCursor cursor = new ResourceCursor();
+		String lastPrefix = "";
+		int offsetStrip = 0;
+		URL currentUrl = url;
+		OffsetListener offsetListener = null;
+		boolean thereAreListeners = false;
+
+		if (onlyNullJarOffset) {
+			offsetListener = jarOffsets.iterator().next();
+			thereAreListeners = offsetListener.listeners != null && offsetListener.listeners.size() > 0;
+		}
+
+		for (int index = start; index < end; index++) {
+			JarEntry entry = entries[index];
+
+			if (!onlyNullJarOffset && (lastPrefix.length() == 0 || !entry.getName().startsWith(lastPrefix))) {
+				OffsetListener newOffsetListener = findOffsetListener(entry.getName());
+
+				if (newOffsetListener != offsetListener) {
+					fireListeners(scanResources, offsetListener, content);
+
+					offsetListener = newOffsetListener;
+
+					thereAreListeners = offsetListener != null && offsetListener.listeners != null && offsetListener.listeners.size() > 0;
+
+					if (offsetListener == null) {
+						lastPrefix = "";
+
+						offsetStrip = 0;
+					} else { // files from the main war popping up at the end
+						lastPrefix = offsetListener.jarOffset;
+
+						offsetStrip = lastPrefix.length();
+					}
+				}
+			}
+
+			if (scanResources.size() >= MAX_RESOURCES) {
+				fireListeners(scanResources, offsetListener, content);
+			}
+
+			int change = offsetListener == null ? ResourceSnapshot.UNCHANGED : track(entry.getName(), ResourceSnapshot.fingerprint(entry.getCrc(), entry.getSize()));
+
+			if (thereAreListeners) {
+				String name = entry.getName();
+
+				if (nestedJars != null && isJar(name)) {
+					nestedJars.add(new NestedJar(name, offsetListener));
+				}
+
+				long interest = offsetListener.interest(name, offsetStrip, name.length(), false, change);
+
+				ResourceScanListener.ScanResource scanResource = interest == 0 ? null
+					: found(cursor.jarEntry(currentUrl, entry, offsetStrip, offsetListener.interestingResource.url), offsetListener, interest);
+
+				if (scanResource != null) {
+					scanResources.add(scanResource);
+					offsetListener.changed(scanResource, change);
+				}
+			}
+		}
+
+		// anything remaining
+		fireListeners(scanResources, offsetListener, content);
+	}
+
+	/**
+	 * The same as processJarFile but reads the central directory of the mapped jar directly, names are compared as raw
+	 * bytes and only decoded for entries someone is listening to. The directory is shared with every other class loader
+	 * with the same jar, and if there is an index, unchanged jars are listed from it.
+	 */
+	protected void processMappedJarFile(List<ResourceScanListener.ScanResource> scanResources, ScanIndex scanIndex) {
+		final ZipCentralDirectory directory;
+
+		try {
+			directory = SharedJarListings.shared.directory(classesSource, scanIndex);
+		} catch (IOException e) {
+			log.error("You have a non jar-file resource on your classpath {}", classesSource.getAbsolutePath());
+
+			return;
+		}
+
+		if (directory == null) {
+			log.debug("{} is too large to map, falling back to JarFile", classesSource.getAbsolutePath());
+
+			processJarFile(scanResources);
+
+			return;
+		}
+
+		final ContentSource content = new ContentSource() {
+			@Override
+			public InputStream open(ResourceScanListener.ScanResource resource) throws IOException {
+				return directory.openStream(resource.directoryIndex);
+			}
+		};
+
+		if (prunesJar()) {
+			processMappedRoots(scanResources, directory, content);
+			return;
+		}
+
+		processEntries(scanResources, directory.size(), new EntryRange() {
+			@Override
+			public void process(List<ResourceScanListener.ScanResource> scanResources, int start, int end) {
+				processMappedRange(scanResources, directory, start, end, content);
+			}
+		});
+	}
+
+	/**
+	 * Only looks at the entries under each offset's roots, which are found by binary searching the sorted listing
+	 * rather than going through all of it.
+	 */
+	private void processMappedRoots(List<ResourceScanListener.ScanResource> scanResources, ZipCentralDirectory directory, ContentSource content) {
+		int[] order = directory.sortedOrder();
+		RawName rawName = new RawName();
+		ResourceCursor cursor = new ResourceCursor();
+		long visited = 0;
+
+		for (OffsetListener offsetListener : jarOffsets) {
+			if (offsetListener.listeners.isEmpty()) {
+				continue;
+			}
+
+			BitSet candidates = new BitSet(order.length);
+
+			for (String root : offsetListener.roots) {
+				ByteLiteral prefix = new ByteLiteral(offsetListener.jarOffset + root);
+
+				for (int pos = directory.lowerBound(order, prefix.bytes); pos < order.length && directory.nameStartsWith(order[pos], prefix); pos++) {
+					candidates.set(order[pos]);
+				}
+			}
+
+			int strip = offsetListener.jarOffsetBytes.length;
+
+			for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1)) {
+				// a root of the war itself can reach into one of its offsets
+				if (!onlyNullJarOffset && findOffsetListener(directory, index) != offsetListener) {
+					continue;
+				}
+
+				visited ++;
+
+				if (scanResources.size() >= MAX_RESOURCES) {
+					fireListeners(scanResources, offsetListener, content);
+				}
+
+				directory.rawName(index, rawName);
+
+				long interest = offsetListener.interest(rawName, strip, rawName.length(), true, ResourceSnapshot.UNCHANGED);
+
+				ResourceScanListener.ScanResource scanResource = interest == 0 ? null
+					: found(cursor.mapped(url, directory, index, rawName, strip, offsetListener.interestingResource.url), offsetListener, interest);
+
+				if (scanResource != null) {
+					scanResources.add(scanResource);
+				}
+			}
+
+			fireListeners(scanResources, offsetListener, content);
 		}
+
+		skipped.addAndGet(order.length - visited);
 	}
 
 	/**
-	 * Used to store the offset(s) in the classesSource, there can be multiple offsets for
-	 * one single file in a URL Class Path (e.g. Bathe Booter/Plugin)
+	 * As above, with the listing of a JarFile.
 	 */
-	private Set<OffsetListener> jarOffsets = new TreeSet<>();
+	private void processJarRoots(List<ResourceScanListener.ScanResource> scanResources, JarEntry[] entries, ContentSource content) {
+		int[] order = SharedJarListings.shared.sortedOrder(entries);
+		ResourceCursor cursor = new ResourceCursor();
+		long visited = 0;
+
+		for (OffsetListener offsetListener : jarOffsets) {
+			if (offsetListener.listeners.isEmpty()) {
+				continue;
+			}
 
+			BitSet candidates = new BitSet(order.length);
 
-	/**
-	 * Allows us to keep a track of who is interested in this classpath artifact
-	 *
-	 * @param listeners
-	 */
-	public void askListeners(List<ResourceScanListener> listeners) {
-		if (jarOffsets.size() == 0) {
-			OffsetListener offsetListener = new OffsetListener();
+			for (String root : offsetListener.roots) {
+				String prefix = offsetListener.jarOffset + root;
 
-			offsetListener.jarOffset = "";
-			offsetListener.interestingResource = new ResourceScanListener.InterestingResource(url);
+				for (int pos = lowerBound(entries, order, prefix); pos < order.length && entries[order[pos]].getName().startsWith(prefix); pos++) {
+					candidates.set(order[pos]);
+				}
+			}
 
-			jarOffsets.add(offsetListener);
+			int strip = offsetListener.jarOffset.length();
 
-			onlyNullJarOffset = true;
-		}
+			for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1)) {
+				String name = entries[index].getName();
 
-		for (ResourceScanListener listener : listeners) {
-			try {
-				for (OffsetListener offsetListener : jarOffsets) {
-					ResourceScanListener.InterestAction interestAction = listener.isInteresting(offsetListener.interestingResource);
+				if (!onlyNullJarOffset && findOffsetListener(name) != offsetListener) {
+					continue;
+				}
 
-					if (interestAction != ResourceScanListener.InterestAction.NONE) {
-						offsetListener.listeners.add(new ListenerInterest(listener, interestAction));
-					}
+				visited ++;
+
+				if (scanResources.size() >= MAX_RESOURCES) {
+					fireListeners(scanResources, offsetListener, content);
+				}
+
+				long interest = offsetListener.interest(name, strip, name.length(), false, ResourceSnapshot.UNCHANGED);
+
+				ResourceScanListener.ScanResource scanResource = interest == 0 ? null
+					: found(cursor.jarEntry(url, entries[index], strip, offsetListener.interestingResource.url), offsetListener, interest);
+
+				if (scanResource != null) {
+					scanResources.add(scanResource);
 				}
-			} catch (Exception ex) {
-				throw new RuntimeException("Failed to ask listener for interest " + listener.getClass().getName() + ": " + ex.getMessage(), ex);
 			}
+
+			fireListeners(scanResources, offsetListener, content);
 		}
+
+		skipped.addAndGet(order.length - visited);
 	}
 
 	/**
-	 * Spelunks through the classpath looking for the resources
+	 * @return - the first place in the sorted order whose name is not less than the prefix
 	 */
-	public void fireListeners() {
-		if (jarOffsets.size() == 0 || (jarOffsets.size() == 1 && jarOffsets.iterator().next().listeners.size() == 0)) {
-			return; // no-one is interested
-		}
-
-		List<ResourceScanListener.ScanResource> scanResources = new ArrayList<>(MAX_RESOURCES);
-
-		if (classesSource.isDirectory()) {
-			OffsetListener listener = jarOffsets.iterator().next();
+	private static int lowerBound(JarEntry[] entries, int[] order, String prefix) {
+		int low = 0;
+		int high = order.length;
 
-			// only process if anyone is listening
-			if (listener.listeners.size() > 0) {
-				processDirectory(scanResources, classesSource, "", listener);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
 
-				fireFileResourceListeners(scanResources, listener);
+			if (entries[order[middle]].getName().compareTo(prefix) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
 			}
-		} else {
-			processJarFile(scanResources);
 		}
+
+		return low;
 	}
 
+	private void processMappedRange(List<ResourceScanListener.ScanResource> scanResources, ZipCentralDirectory directory, int start, int end, ContentSource content) {
+		RawName rawName = new RawName();
+		ResourceCursor cursor = new ResourceCursor();
+		ByteLiteral lastPrefix = ByteLiteral.EMPTY;
+		OffsetListener offsetListener = null;
+		boolean thereAreListeners = false;
 
+		if (onlyNullJarOffset) {
+			offsetListener = jarOffsets.iterator().next();
+			thereAreListeners = offsetListener.listeners != null && offsetListener.listeners.size() > 0;
+		}
 
-	protected void processDirectory(List<ResourceScanListener.ScanResource> scanResources, File dir, String packageName, OffsetListener listener) {
-		File[] files = dir.listFiles();
+		for (int index = start; index < end; index++) {
+			if (!onlyNullJarOffset && (lastPrefix.length() == 0 || !directory.nameStartsWith(index, lastPrefix))) {
+				OffsetListener newOffsetListener = findOffsetListener(directory, index);
 
-		if (files != null) {
-			for (File file : files) {
-				if (file.isDirectory()) {
-					// as long as it isn't a "hidden" directory
+				if (newOffsetListener != offsetListener) {
+					fireListeners(scanResources, offsetListener, content);
 
-					if (!file.getName().startsWith(".")) {
-						processFile(scanResources, packageName, listener, file); // jars and dirs need to be added as resources
+					offsetListener = newOffsetListener;
 
-						String newPackageName = packageName;
+					thereAreListeners = offsetListener != null && offsetListener.listeners != null && offsetListener.listeners.size() > 0;
 
-						if (packageName.length() > 0) {
-							newPackageName += "/";
-						}
+					lastPrefix = offsetListener == null ? ByteLiteral.EMPTY : offsetListener.jarOffsetLiteral;
+				}
+			}
 
-						processDirectory(scanResources, file, newPackageName + file.getName(), listener);
-					}
-				} else {
-					processFile(scanResources, packageName, listener, file);
+			if (scanResources.size() >= MAX_RESOURCES) {
+				fireListeners(scanResources, offsetListener, content);
+			}
+
+			int change = offsetListener != null && recording()
+				? track(directory.name(index), ResourceSnapshot.fingerprint(directory.crc(index), directory.size(index))) : ResourceSnapshot.UNCHANGED;
+
+			if (thereAreListeners) {
+				directory.rawName(index, rawName);
+
+				if (nestedJars != null && isJar(rawName)) {
+					nestedJars.add(new NestedJar(directory.name(index), offsetListener));
+				}
+
+				long interest = offsetListener.interest(rawName, lastPrefix.length(), rawName.length(), true, change);
+
+				ResourceScanListener.ScanResource scanResource = interest == 0 ? null
+					: found(cursor.mapped(url, directory, index, rawName, lastPrefix.length(), offsetListener.interestingResource.url), offsetListener, interest);
+
+				if (scanResource != null) {
+					scanResources.add(scanResource);
+					offsetListener.changed(scanResource, change);
 				}
 			}
 		}
 
+		// anything remaining
+		fireListeners(scanResources, offsetListener, content);
 	}
 
-	private void processFile(List<ResourceScanListener.ScanResource> scanResources, String packageName, OffsetListener listener, File file) {
-		scanResources.add(new ResourceScanListener.ScanResource(url, file, packageName + "/" + file.getName()));
+	/**
+	 * Splits the listing of a large jar into a range per thread when the scan is parallel. Each range finds its own
+	 * offsets and hands out its own batches, so a batch still only ever holds resources from one offset, but batches
+	 * from different parts of the jar arrive in no particular order. Listeners that aren't concurrent are still only
+	 * called by one thread at a time. Incremental scans need the entries in order, so they are never split.
+	 *
+	 * @param size - the number of entries in the jar
+	 */
+	private void processEntries(List<ResourceScanListener.ScanResource> scanResources, int size, final EntryRange range) {
+		// at least two even on one processor, so one range can read while another waits on the disk
+		int ranges = splitting == null || size < splitting.getSplitJarThreshold() || recording() ? 1 : Math.max(2, Runtime.getRuntime().availableProcessors());
 
-		if (scanResources.size() >= MAX_RESOURCES) {
-			fireFileResourceListeners(scanResources, listener);
+		if (ranges < 2) {
+			range.process(scanResources, 0, size);
+			return;
 		}
-	}
 
-	private void fireFileResourceListeners(List<ResourceScanListener.ScanResource> scanResources, OffsetListener offsetListener) {
-		if (scanResources.size() > 0) {
+		List<Runnable> tasks = new ArrayList<>(ranges);
+		int rangeSize = (size + ranges - 1) / ranges;
 
-			for (ListenerInterest interested : offsetListener.listeners) {
-				try {
-					List<ResourceScanListener.ScanResource> desired = interested.listener.resource(scanResources);
+		for (int start = 0; start < size; start += rangeSize) {
+			final int from = start;
+			final int to = Math.min(size, start + rangeSize);
 
-					if (desired != null) {
-						for (ResourceScanListener.ScanResource desire : desired) {
-							if (desire.file.isFile()) {
-								FileInputStream stream = new FileInputStream(desire.file);
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					range.process(new ArrayList<ResourceScanListener.ScanResource>(MAX_RESOURCES), from, to);
+				}
+			});
+		}
 
-								interested.listener.deliver(desire, stream);
+		ParallelRunner.run(splitting.getExecutor(), tasks);
+	}
 
-								stream.close();
-							}
-						}
-					}
-				} catch (Exception e) {
-					throw new RuntimeException("Unable to ask listener for resources", e);
-				}
-			}
+	private static boolean isJar(CharSequence name) {
+		int length = name.length();
 
-			scanResources.clear();
-		}
+		return length > 4 && name.charAt(length - 4) == '.' && name.charAt(length - 3) == 'j' && name.charAt(length - 2) == 'a'
+			&& name.charAt(length - 1) == 'r';
 	}
 
-	protected void processJarFile(List<ResourceScanListener.ScanResource> scanResources) {
-		JarFile jf = null;
+	/**
+	 * Scans the jars found inside this one, each with the listeners of the offset it was found in. Their resources have
+	 * URLs of the form jar:file:/app.war!/WEB-INF/lib/lib.jar!/com/Fred.class. A stored jar is read straight out of
+	 * the mapping of this one, a compressed one is mapped from the extraction cache if there is one, otherwise it has to
+	 * be streamed. Jars inside those aren't looked in.
+	 */
+	private void processNestedJars(List<ResourceScanListener.ScanResource> scanResources, ExtractionCache extractionCache) {
+		ZipCentralDirectory outer;
 
 		try {
-			jf = new JarFile(classesSource);
+			outer = SharedJarListings.shared.directory(classesSource, null);
 		} catch (IOException e) {
-			log.error("You have a non jar-file resource on your classpath {}", classesSource.getAbsolutePath());
+			log.error("Unable to read the jars inside {}", classesSource.getAbsolutePath());
 
 			return;
 		}
 
-		try {
-			Enumeration<JarEntry> entries = jf.entries();
+		if (outer == null) {
+			log.warn("{} is too large to map, the jars inside it are not scanned", classesSource.getAbsolutePath());
 
-			String lastPrefix = "";
-			int offsetStrip = 0;
-			URL currentUrl = url;
-			OffsetListener offsetListener = null;
-			boolean thereAreListeners = false;
+			return;
+		}
+
+		Map<String, Integer> indexes = new HashMap<>();
+		RawName rawName = new RawName();
+
+		for (int index = 0, size = outer.size(); index < size; index++) {
+			if (isJar(outer.rawName(index, rawName))) {
+				indexes.put(outer.name(index), index);
+			}
+		}
 
-			if (onlyNullJarOffset) {
-				offsetListener = jarOffsets.iterator().next();
-				thereAreListeners = offsetListener.listeners != null && offsetListener.listeners.size() > 0;
+		for (NestedJar nestedJar : nestedJars) {
+			Integer index = indexes.get(nestedJar.name);
+
+			if (index == null) {
+				continue;
 			}
 
-			while (entries.hasMoreElements()) {
-				JarEntry entry = entries.nextElement();
+			try {
+				URL nestedUrl = nestedUrl(nestedJar.name);
+
+				ZipCentralDirectory directory = null;
+
+				if (outer.method(index) == ZipCentralDirectory.STORED) {
+					directory = new ZipCentralDirectory(classesSource, outer.rawContent(index));
+				} else if (extractionCache != null) {
+					File extracted = extractionCache.extract(outer, index);
+
+					directory = extracted == null ? null : SharedJarListings.shared.directory(extracted, null);
+				}
 
-				if (!onlyNullJarOffset && (lastPrefix.length() == 0 || !entry.getName().startsWith(lastPrefix))) {
-					OffsetListener newOffsetListener = findOffsetListener(entry.getName());
+				if (directory != null) {
+					processMappedNestedJar(scanResources, nestedJar, directory, nestedUrl);
+				} else {
+					processStreamedNestedJar(scanResources, nestedJar, new NestedJarStream(outer, index), nestedUrl);
+				}
+			} catch (IOException e) {
+				log.warn("Unable to scan {} inside {}: {}", nestedJar.name, classesSource.getAbsolutePath(), e.getMessage());
+			}
+		}
+	}
 
-					if (newOffsetListener != offsetListener) {
-						fireListeners(scanResources, offsetListener, jf);
+	private URL nestedUrl(String nestedJar) {
+		try {
+			return new URL("jar:" + classesSource.toURI().toURL() + "!/" + nestedJar + "!/");
+		} catch (MalformedURLException e) {
+			throw new RuntimeException("Unable to make a URL for " + nestedJar + " inside " + classesSource.getAbsolutePath(), e);
+		}
+	}
 
-						offsetListener = newOffsetListener;
+	private void processMappedNestedJar(List<ResourceScanListener.ScanResource> scanResources, NestedJar nestedJar,
+	                                    final ZipCentralDirectory directory, URL nestedUrl) {
+		ContentSource content = new ContentSource() {
+			@Override
+			public InputStream open(ResourceScanListener.ScanResource resource) throws IOException {
+				return directory.openStream(resource.directoryIndex);
+			}
+		};
 
-						thereAreListeners = offsetListener != null && offsetListener.listeners != null && offsetListener.listeners.size() > 0;
+		OffsetListener offsetListener = nestedJar.offsetListener;
+		RawName rawName = new RawName();
+		ResourceCursor cursor = new ResourceCursor();
 
-						if (offsetListener == null) {
-							lastPrefix = "";
+		for (int index = 0, size = directory.size(); index < size; index++) {
+			int change = recording()
+				? track(nestedJar.name + "!/" + directory.name(index), ResourceSnapshot.fingerprint(directory.crc(index), directory.size(index))) : ResourceSnapshot.UNCHANGED;
 
-							offsetStrip = 0;
-						} else { // files from the main war popping up at the end
-							lastPrefix = offsetListener.jarOffset;
+			directory.rawName(index, rawName);
+			long interest = offsetListener.interest(rawName, 0, rawName.length(), true, change);
 
-							offsetStrip = lastPrefix.length();
-						}
-					}
+			ResourceScanListener.ScanResource scanResource = interest == 0 ? null
+				: found(cursor.mapped(url, directory, index, rawName, 0, nestedUrl), offsetListener, interest);
 
-				} else if (scanResources.size() >= MAX_RESOURCES) {
-					fireListeners(scanResources, offsetListener, jf);
+			if (scanResource != null) {
+				scanResources.add(scanResource);
+				offsetListener.changed(scanResource, change);
+			}
+
+			if (scanResources.size() >= MAX_RESOURCES) {
+				fireListeners(scanResources, offsetListener, content);
+			}
+		}
+
+		fireListeners(scanResources, offsetListener, content);
+	}
+
+	private void processStreamedNestedJar(List<ResourceScanListener.ScanResource> scanResources, NestedJar nestedJar,
+	                                      NestedJarStream content, URL nestedUrl) throws IOException {
+		OffsetListener offsetListener = nestedJar.offsetListener;
+		ResourceCursor cursor = new ResourceCursor();
+
+		try {
+			for (JarEntry entry : content.entries()) {
+				String name = entry.getName();
+				int change = recording()
+					? track(nestedJar.name + "!/" + name, ResourceSnapshot.fingerprint(entry.getCrc(), entry.getSize())) : ResourceSnapshot.UNCHANGED;
+				long interest = offsetListener.interest(name, 0, name.length(), false, change);
+
+				ResourceScanListener.ScanResource scanResource = interest == 0 ? null
+					: found(cursor.jarEntry(url, entry, 0, nestedUrl), offsetListener, interest);
+
+				if (scanResource != null) {
+					scanResources.add(scanResource);
+					offsetListener.changed(scanResource, change);
 				}
 
-				if (thereAreListeners) {
-					scanResources.add(new ResourceScanListener.ScanResource(currentUrl, entry, resourceName(offsetStrip, entry.getName()), offsetListener.interestingResource.url));
+				if (scanResources.size() >= MAX_RESOURCES) {
+					fireListeners(scanResources, offsetListener, content);
 				}
 			}
 
-			// anything remaining
-			fireListeners(scanResources, offsetListener, jf);
-
+			fireListeners(scanResources, offsetListener, content);
 
+			awaitDelivery();
 		} finally {
-			try {
-				jf.close();
-			} catch (IOException e) {
-				log.error("Unable to close jar file {}", classesSource);
-			}
+			content.close();
 		}
 	}
 
@@ -265,27 +1396,190 @@ public class ClasspathResource {
 		return name;
 	}
 
-	private void fireListeners(List<ResourceScanListener.ScanResource> scanResources, OffsetListener offsetListener, JarFile jf) {
+	private void fireListeners(List<ResourceScanListener.ScanResource> scanResources, final OffsetListener offsetListener, final ContentSource content) {
 		if (scanResources.size() > 0) {
+			final ScanPipeline stages = pipeline;
 
-			for (ListenerInterest interested : offsetListener.listeners) {
-				try {
-					List<ResourceScanListener.ScanResource> desired = interested.listener.resource(scanResources);
+			if (stages != null) {
+				final List<ResourceScanListener.ScanResource> batch = new ArrayList<>(scanResources);
+
+				stages.ask(new Runnable() {
+					@Override
+					public void run() {
+						offer(batch, offsetListener, content, stages);
+					}
+				});
+			} else {
+				offer(scanResources, offsetListener, content, null);
+			}
+
+			scanResources.clear();
+		}
+	}
+
+	private void offer(List<ResourceScanListener.ScanResource> scanResources, OffsetListener offsetListener, ContentSource content, ScanPipeline stages) {
+		for (ListenerInterest interested : offsetListener.listeners) {
+			List<ResourceScanListener.ScanResource> offered = offered(scanResources, interested);
+
+			if (offered.isEmpty()) {
+				continue;
+			}
+
+			try {
+				if (stages != null) {
+					pipelineDeliver(offered, interested.listener, content, stages);
+				} else if (interested.listener instanceof ConcurrentResourceScanListener) {
+					deliver(offered, interested.listener, content);
+				} else {
+					synchronized (interested.listener) {
+						deliver(offered, interested.listener, content);
+					}
+				}
+			} catch (Exception e) {
+				throw new RuntimeException("Unable to ask listener for resources", e);
+			}
+		}
+	}
 
-					if (desired != null) {
-						for (ResourceScanListener.ScanResource desire : desired) {
-							interested.listener.deliver(desire, jf.getInputStream(desire.entry));
+	/**
+	 * Asks the listener what it wants on the asking stage and hands reading it over to the delivery stage. The listener
+	 * may be asked about the next batch before it has been given everything it wanted from this one.
+	 */
+	private void pipelineDeliver(List<ResourceScanListener.ScanResource> offered, final ResourceScanListener listener, final ContentSource content, ScanPipeline stages) throws Exception {
+		final List<ResourceScanListener.ScanResource> desired;
+
+		if (listener instanceof CursorResourceScanListener) {
+			desired = offered; // what it pinned
+		} else if (listener instanceof ConcurrentResourceScanListener) {
+			desired = listener.resource(offered);
+		} else {
+			synchronized (listener) {
+				desired = listener.resource(offered);
+			}
+		}
+
+		if (desired != null && !desired.isEmpty()) {
+			stages.deliver(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (listener instanceof ConcurrentResourceScanListener) {
+							deliver(listener, desired, content);
+						} else {
+							synchronized (listener) {
+								deliver(listener, desired, content);
+							}
 						}
+					} catch (Exception e) {
+						throw new RuntimeException("Unable to deliver resources to listener", e);
 					}
-				} catch (Exception e) {
-					throw new RuntimeException("Unable to ask listener for resources", e);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits for the pipeline, if there is one, to have handed everything over, so the content can be closed.
+	 */
+	private void awaitDelivery() {
+		if (pipeline != null) {
+			pipeline.await();
+		}
+	}
+
+	/**
+	 * @return - just the resources that match the listener's filter
+	 */
+	private List<ResourceScanListener.ScanResource> offered(List<ResourceScanListener.ScanResource> scanResources, ListenerInterest interested) {
+		if (interested.listener instanceof CursorResourceScanListener) {
+			List<ResourceScanListener.ScanResource> pinned = new ArrayList<>();
+
+			for (ResourceScanListener.ScanResource scanResource : scanResources) {
+				if (scanResource.pinnedBy != null && scanResource.pinnedBy.contains(interested.listener)) {
+					pinned.add(scanResource);
 				}
 			}
 
-			scanResources.clear();
+			return pinned;
+		}
+
+		if (interested.filter == null && !interested.delta) {
+			return scanResources;
+		}
+
+		long bit = 1L << interested.bit;
+		List<ResourceScanListener.ScanResource> offered = new ArrayList<>();
+
+		for (ResourceScanListener.ScanResource scanResource : scanResources) {
+			if ((scanResource.interest & bit) != 0 && (interested.bit < OVERFLOW_BIT || interested.filter == null || interested.filter.matches(scanResource.resourceName))) {
+				offered.add(scanResource);
+			}
+		}
+
+		return offered;
+	}
+
+	private void deliver(List<ResourceScanListener.ScanResource> scanResources, ResourceScanListener listener, ContentSource content) throws Exception {
+		// a cursor listener is only offered what it pinned
+		List<ResourceScanListener.ScanResource> desired = listener instanceof CursorResourceScanListener ? scanResources : listener.resource(scanResources);
+
+		if (desired != null) {
+			deliver(listener, desired, content);
 		}
 	}
 
+	private void deliver(ResourceScanListener listener, List<ResourceScanListener.ScanResource> desired, ContentSource content) throws Exception {
+		for (ResourceScanListener.ScanResource desire : desired) {
+			if (listener instanceof ClassScanListener && desire.isClass()) {
+				ClassFileInfo classInfo = classInfo(desire, content);
+
+				if (classInfo != null) {
+					((ClassScanListener) listener).deliverClass(desire, classInfo);
+				}
+
+				continue;
+			}
+
+			InputStream stream = content.open(desire);
+
+			if (stream != null) {
+				try {
+					listener.deliver(desire, stream);
+				} finally {
+					stream.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses the class the first time anyone asks for it.
+	 *
+	 * @return - the parsed class or null if it couldn't be read
+	 */
+	private ClassFileInfo classInfo(ResourceScanListener.ScanResource desire, ContentSource content) throws IOException {
+		ClassFileInfo classInfo = desire.classInfo;
+
+		if (classInfo == null) {
+			InputStream stream = content.open(desire);
+
+			if (stream == null) {
+				return null;
+			}
+
+			try {
+				classInfo = ClassFileParser.forThread().parse(stream);
+				desire.classInfo = classInfo;
+			} catch (IOException e) {
+				log.warn("Unable to parse class {} in {}: {}", desire.resourceName, classesSource.getAbsolutePath(), e.getMessage());
+			} finally {
+				stream.close();
+			}
+		}
+
+		return classInfo;
+	}
+
 	/**
 	 * Finds the name of the matching offset listener for this resource
 	 *
@@ -306,12 +1600,29 @@ public class ClasspathResource {
 		return emptyListener;
 	}
 
+	/**
+	 * As above but compares the raw name in the central directory.
+	 */
+	private OffsetListener findOffsetListener(ZipCentralDirectory directory, int index) {
+		OffsetListener emptyListener = null;
+
+		for (OffsetListener listener : jarOffsets) {
+			if (listener.jarOffset.length() == 0) {
+				emptyListener = listener;
+			} else if (directory.nameStartsWith(index, listener.jarOffsetLiteral)) {
+				return listener;
+			}
+		}
+
+		return emptyListener;
+	}
+
 
 	/**
 	 * Looks through any offsets and removes any listeners that asked to listen to this
 	 * resource only once.
 	 */
-	public void removeSingleFireListeners() {
+	public synchronized void removeSingleFireListeners() {
 		for (OffsetListener listener : jarOffsets) {
 			List<ListenerInterest> deleteds = new ArrayList<>();
 
@@ -326,13 +1637,37 @@ public class ClasspathResource {
 		}
 	}
 
+	/**
+	 * Forgets a listener that has been unregistered. The lists are replaced rather than changed, so a scan going
+	 * through them on this thread (the listener unregistering itself) carries on undisturbed.
+	 *
+	 * @param listener - the listener to forget
+	 */
+	public synchronized void removeListener(ResourceScanListener listener) {
+		for (OffsetListener offsetListener : jarOffsets) {
+			List<ListenerInterest> remaining = new ArrayList<>(offsetListener.listeners.size());
+
+			for (ListenerInterest interest : offsetListener.listeners) {
+				if (interest.listener != listener) {
+					remaining.add(interest);
+				}
+			}
+
+			offsetListener.listeners = remaining;
+		}
+
+		if (snapshot != null) {
+			snapshot.caughtUp.remove(listener);
+		}
+	}
+
 	/**
 	 * This is used to collect all of the unique listeners that will be triggered by the next CP scan. It allows us
 	 * to notify them.
 	 *
 	 * @param listeners
 	 */
-	public void collectInUseListeners(Set<ResourceScanListener> listeners) {
+	public synchronized void collectInUseListeners(Set<ResourceScanListener> listeners) {
 		for(OffsetListener ol : jarOffsets) {
 			for(ListenerInterest li : ol.listeners) {
 				listeners.add(li.listener);
@@ -357,10 +1692,36 @@ public class ClasspathResource {
 		return jarOffsets;
 	}
 
+	/**
+	 * Watches a directory resource for changes, so rescans only look at what changed rather than walking the whole tree.
+	 * Does nothing for jars.
+	 *
+	 * @param quietPeriod - how long in milliseconds things have to be quiet after a change before onChange is called
+	 * @param onChange - called on the watching thread once a burst of changes is over
+	 */
+	public synchronized void watch(long quietPeriod, Runnable onChange) {
+		if (watcher == null && classesSource.isDirectory()) {
+			try {
+				watcher = new DirectoryWatcher(classesSource, quietPeriod, onChange);
+			} catch (IOException e) {
+				log.warn("Unable to watch {}, it will be walked on each scan", classesSource.getAbsolutePath(), e);
+			}
+		}
+	}
+
+	public synchronized void stopWatching() {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
+	}
+
 	public void addJarOffset(String offset, URL url) {
 		OffsetListener listener = new OffsetListener();
 
 		listener.jarOffset = offset.startsWith("/") ? offset.substring(1) : offset;
+		listener.jarOffsetBytes = listener.jarOffset.getBytes(UTF8);
+		listener.jarOffsetLiteral = new ByteLiteral(listener.jarOffsetBytes);
 		listener.interestingResource = new ResourceScanListener.InterestingResource(url);
 
 		jarOffsets.add(listener);
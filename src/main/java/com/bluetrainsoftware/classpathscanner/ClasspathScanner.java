@@ -7,6 +7,11 @@ import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This implements an efficient classpath scanner for URL Class Loaders
@@ -24,29 +29,114 @@ public class ClasspathScanner {
 	 */
 	class Classpath {
 		final List<ClasspathResource> classpaths;
-		final List<ResourceScanListener> uncheckedListeners;
+
+		/**
+		 * The classpath of the nearest parent loader when parents are being scanned, and its resources followed by ours
+		 */
+		final Classpath parent;
+		final List<ClasspathResource> layered;
+
+		final Queue<ResourceScanListener> uncheckedListeners = new ConcurrentLinkedQueue<>();
+		final ClassIndexer classIndexer;
+
+		/**
+		 * The globally registered listeners this classpath has already taken
+		 */
+		private final Set<ResourceScanListener> globalListenersTaken =
+			Collections.newSetFromMap(new ConcurrentHashMap<ResourceScanListener, Boolean>());
+
+		/**
+		 * The scan or rescan in progress, scans that arrive while a scan is running wait for it rather than scanning again
+		 */
+		private final AtomicReference<FutureTask<Void>> scanInProgress = new AtomicReference<>();
+
+		/**
+		 * The thread running the scan in progress and any threads scanning resources for it. A listener on one of these
+		 * that scans the classpath again mustn't wait for the scan it is part of.
+		 */
+		private final Set<Thread> scanningThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
 
 		public Classpath(List<ClasspathResource> classpaths) {
+			this(classpaths, null);
+		}
+
+		public Classpath(List<ClasspathResource> classpaths, Classpath parent) {
 			this.classpaths = Collections.unmodifiableList(classpaths);
+			this.parent = parent;
+
+			if (parent == null) {
+				layered = this.classpaths;
+			} else {
+				List<ClasspathResource> all = new ArrayList<>(parent.layered);
+				all.addAll(classpaths);
+				layered = Collections.unmodifiableList(all);
+			}
 
-			this.uncheckedListeners = new ArrayList<>();
-			this.uncheckedListeners.addAll(allUncheckedListeners); // set it to the existing list
+			if (configuration.isIndexAnnotations() || configuration.isIndexHierarchy()) {
+				classIndexer = new ClassIndexer(configuration.isIndexAnnotations(), configuration.isIndexHierarchy(),
+					parent == null ? null : parent.classIndexer);
+				uncheckedListeners.add(classIndexer);
+			} else {
+				classIndexer = null;
+			}
 		}
 
-		public void askForInterest() {
-			if (uncheckedListeners.size() > 0) {
-				for(ClasspathResource resource : classpaths) {
-					resource.askListeners(uncheckedListeners);
+		/**
+		 * Takes the listeners registered since the last scan, those registered while this is happening are left for the
+		 * next one. Only called by the scan in progress.
+		 */
+		private List<ResourceScanListener> takeUncheckedListeners() {
+			List<ResourceScanListener> listeners = new ArrayList<>();
+
+			for(ResourceScanListener listener : allUncheckedListeners) {
+				if (globalListenersTaken.add(listener)) {
+					listeners.add(listener);
 				}
 			}
 
-			// clearing them allows us to all this over and over and not worry
-			uncheckedListeners.clear();
+			ResourceScanListener listener;
+
+			while ((listener = uncheckedListeners.poll()) != null) {
+				listeners.add(listener);
+			}
+
+			return listeners;
+		}
+
+		public void askForInterest(List<ResourceScanListener> listeners) {
+			if (listeners.size() > 0) {
+				for(ClasspathResource resource : classpaths) {
+					resource.askListeners(listeners);
+				}
+			}
 		}
 
 		public void fireListeners() {
-			for(ClasspathResource resource : classpaths) {
-				resource.fireListeners();
+			if (!configuration.isParallel() || classpaths.size() < 2) {
+				for(ClasspathResource resource : classpaths) {
+					resource.fireListeners(configuration);
+				}
+			} else {
+				List<Runnable> tasks = new ArrayList<>(classpaths.size());
+
+				for(final ClasspathResource resource : classpaths) {
+					tasks.add(new Runnable() {
+						@Override
+						public void run() {
+							boolean helping = scanningThreads.add(Thread.currentThread());
+
+							try {
+								resource.fireListeners(configuration);
+							} finally {
+								if (helping) {
+									scanningThreads.remove(Thread.currentThread());
+								}
+							}
+						}
+					});
+				}
+
+				ParallelRunner.run(configuration.getExecutor(), tasks);
 			}
 		}
 
@@ -56,18 +146,155 @@ public class ClasspathScanner {
 			}
 		}
 
+		/**
+		 * Scans the classpath and tells the listeners, unless a scan is already in progress in which case we wait for that
+		 * one to finish instead. Parents are scanned first.
+		 */
 		public void triggerNotifications() {
+			triggerParentNotifications();
+			triggerOwnNotifications();
+		}
+
+		/**
+		 * A parent shared by many children is only scanned for them when it has listeners it hasn't told yet, otherwise
+		 * it would be scanned again for every child.
+		 */
+		private void triggerParentNotifications() {
+			if (parent != null) {
+				parent.triggerParentNotifications();
+
+				if (parent.hasUncheckedListeners()) {
+					parent.triggerOwnNotifications();
+				}
+			}
+		}
+
+		private boolean hasUncheckedListeners() {
+			if (!uncheckedListeners.isEmpty()) {
+				return true;
+			}
+
+			for(ResourceScanListener listener : allUncheckedListeners) {
+				if (!globalListenersTaken.contains(listener)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * A listener registered too late for a scan we joined hasn't been told yet, so we go again for it before returning.
+		 */
+		private void triggerOwnNotifications() {
+			FutureTask<Void> scan = scanTask(false);
+
+			while (!runOrJoin(scan, true) && hasUncheckedListeners()) {
+				scan = scanTask(true);
+			}
+		}
+
+		/**
+		 * @param lateListenersOnly - only scan if there are listeners that haven't been told, another scan may have told
+		 *                          them by the time this one starts
+		 */
+		private FutureTask<Void> scanTask(final boolean lateListenersOnly) {
+			return new FutureTask<Void>(new Runnable() {
+				@Override
+				public void run() {
+					if (!lateListenersOnly || hasUncheckedListeners()) {
+						notifyListeners();
+					}
+				}
+			}, null);
+		}
+
+		/**
+		 * Runs the task unless something else is already running against this classpath. A scan that finds another scan
+		 * running waits for it rather than scanning again, anything else (e.g. a rescan) waits for it to finish and then
+		 * runs its own task. A listener that scans the classpath from inside the scan that is telling it returns straight
+		 * away, the scan it is in covers it.
+		 *
+		 * @param join - true if the task can be replaced by a scan that is already running
+		 * @return - false if we waited for a scan that was already running instead
+		 */
+		private boolean runOrJoin(FutureTask<Void> task, boolean join) {
+			if (scanningThreads.contains(Thread.currentThread())) {
+				return true;
+			}
+
+			FutureTask<Void> inProgress;
+
+			do {
+				if (scanInProgress.compareAndSet(null, task)) {
+					scanningThreads.add(Thread.currentThread());
+
+					try {
+						task.run();
+					} finally {
+						scanningThreads.remove(Thread.currentThread());
+						scanInProgress.set(null);
+					}
+
+					inProgress = task;
+				} else {
+					inProgress = scanInProgress.get();
+
+					if (inProgress != null && (!join || inProgress instanceof Rescan)) {
+						waitFor(inProgress);
+						inProgress = null;
+					}
+				}
+			} while (inProgress == null);
+
+			try {
+				inProgress.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted waiting for the classpath scan", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+
+				throw new RuntimeException(e.getCause());
+			}
+
+			return inProgress == task;
+		}
+
+		/**
+		 * Waits for someone else's task, if it failed that is for them to deal with.
+		 */
+		private void waitFor(FutureTask<Void> task) {
+			try {
+				task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted waiting for the classpath scan", e);
+			} catch (ExecutionException e) {
+				// reported to whoever ran it
+			}
+		}
+
+		private void notifyListeners() {
 			Set<ResourceScanListener> listeners = new HashSet<>();
 
 			for(ClasspathResource resource : classpaths) {
 				resource.collectInUseListeners(listeners);
 			}
 
+			List<ResourceScanListener> uncheckedListeners = takeUncheckedListeners();
+
 			listeners.addAll(uncheckedListeners);
 
 			notifyAction(listeners, ResourceScanListener.ScanAction.STARTING);
 
-			askForInterest();
+			askForInterest(uncheckedListeners);
 			fireListeners();
 
 			cleanListeners();
@@ -76,6 +303,105 @@ public class ClasspathScanner {
 
 		}
 
+		/**
+		 * Watches the directories in this classpath, rescanning each one on its own when it changes.
+		 */
+		public void watch() {
+			for(final ClasspathResource resource : classpaths) {
+				resource.watch(configuration.getWatchQuietPeriod(), new Runnable() {
+					@Override
+					public void run() {
+						rescan(resource);
+					}
+				});
+			}
+		}
+
+		public void stopWatching() {
+			for(ClasspathResource resource : classpaths) {
+				resource.stopWatching();
+			}
+		}
+
+		/**
+		 * @return - true if a scan or rescan is running against this classpath
+		 */
+		boolean isScanning() {
+			return scanInProgress.get() != null;
+		}
+
+		/**
+		 * What the listeners of this classpath have been told, so a classpath that replaces it doesn't tell them again.
+		 * The listeners still in use are asked again by the replacement, those that were only interested once are not.
+		 */
+		ListenersTold listenersTold() {
+			Set<ResourceScanListener> listeners = new HashSet<>();
+
+			for(ClasspathResource resource : classpaths) {
+				resource.collectInUseListeners(listeners);
+			}
+
+			listeners.addAll(uncheckedListeners);
+
+			// the replacement has its own indexer
+			listeners.remove(classIndexer);
+
+			return new ListenersTold(new HashSet<>(globalListenersTaken), new ArrayList<>(listeners));
+		}
+
+		/**
+		 * Takes over from a classpath the registry evicted, before anyone else can see this one.
+		 */
+		void carryOver(ListenersTold told) {
+			globalListenersTaken.addAll(told.globalListenersTaken);
+			uncheckedListeners.addAll(told.listeners);
+		}
+
+		/**
+		 * Lets go of a listener that has been unregistered.
+		 */
+		void forget(ResourceScanListener listener) {
+			globalListenersTaken.remove(listener);
+			uncheckedListeners.remove(listener);
+
+			for(ClasspathResource resource : classpaths) {
+				resource.removeListener(listener);
+			}
+		}
+
+		/**
+		 * Called when the registry drops this classpath.
+		 */
+		void release() {
+			stopWatching();
+		}
+
+		/**
+		 * Rescans one resource that has changed, the listeners are told it is a scan like any other. It waits for any scan
+		 * in progress to finish, and scans that arrive while it is running wait for it.
+		 */
+		public void rescan(final ClasspathResource resource) {
+			runOrJoin(new Rescan(new Runnable() {
+				@Override
+				public void run() {
+					notifyListeners(resource);
+				}
+			}), false);
+		}
+
+		private void notifyListeners(ClasspathResource resource) {
+			Set<ResourceScanListener> listeners = new HashSet<>();
+
+			resource.collectInUseListeners(listeners);
+
+			notifyAction(listeners, ResourceScanListener.ScanAction.STARTING);
+
+			resource.fireListeners(configuration);
+			resource.removeSingleFireListeners();
+
+			notifyAction(listeners, ResourceScanListener.ScanAction.COMPLETE);
+		}
+
 		private void notifyAction(Set<ResourceScanListener> listeners, ResourceScanListener.ScanAction action) {
 			for(ResourceScanListener listener : listeners) {
 				listener.scanAction(action);
@@ -83,8 +409,44 @@ public class ClasspathScanner {
 		}
 	}
 
-	public static Map<URLClassLoader, Classpath> resources = new HashMap<>();
-	protected static List<ResourceScanListener> allUncheckedListeners = new ArrayList<>();
+	/**
+	 * A rescan of a single resource, a scan can't stand in for it or it for a scan.
+	 */
+	private static class Rescan extends FutureTask<Void> {
+		Rescan(Runnable runnable) {
+			super(runnable, null);
+		}
+	}
+
+	/**
+	 * What an evicted classpath's listeners had been told
+	 */
+	static class ListenersTold {
+		final Set<ResourceScanListener> globalListenersTaken;
+		final List<ResourceScanListener> listeners;
+
+		ListenersTold(Set<ResourceScanListener> globalListenersTaken, List<ResourceScanListener> listeners) {
+			this.globalListenersTaken = globalListenersTaken;
+			this.listeners = listeners;
+		}
+
+		void forget(ResourceScanListener listener) {
+			globalListenersTaken.remove(listener);
+			listeners.remove(listener);
+		}
+	}
+
+	private static ClasspathRegistry registry = new ClasspathRegistry();
+
+	/**
+	 * @deprecated - scanned class loaders are held by the registry, this is a view of it for code that used the map.
+	 * Use getRegistry() instead.
+	 */
+	@Deprecated
+	public static Map<URLClassLoader, Classpath> resources = registry.asMap();
+	protected static Queue<ResourceScanListener> allUncheckedListeners = new ConcurrentLinkedQueue<>();
+
+	private final ScanConfiguration configuration = new ScanConfiguration();
 
 	public static ClasspathScanner getInstance() {
 		return globalScanner;
@@ -92,18 +454,44 @@ public class ClasspathScanner {
 
 	public static void resetScannerForTesting() {
 		globalScanner = new ClasspathScanner();
-		allUncheckedListeners = new ArrayList<>();
-		resources = new HashMap<>();
+		allUncheckedListeners = new ConcurrentLinkedQueue<>();
+		registry = new ClasspathRegistry();
+		resources = registry.asMap();
 	}
 
-	public void registerResourceScanner(ResourceScanListener listener) {
-		for(Classpath cp : resources.values()) {
-			cp.uncheckedListeners.add(listener);
-		}
+	/**
+	 * The scan state of every class loader that has been scanned, and how much of it there is.
+	 */
+	public static ClasspathRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * The options used by this scanner, e.g. turning on parallel scanning.
+	 *
+	 * @return - the live configuration
+	 */
+	public ScanConfiguration getConfiguration() {
+		return configuration;
+	}
 
+	/**
+	 * Registers a listener for every classpath, those already scanned and those still to come. It is picked up by the next
+	 * scan of each classpath that starts after it was registered. Safe to call at any time from any thread.
+	 */
+	public void registerResourceScanner(ResourceScanListener listener) {
 		allUncheckedListeners.add(listener);
 	}
 
+	/**
+	 * Stops telling a listener about scans and lets go of it, every classpath that has been scanned forgets it. A
+	 * listener still held would keep its class loader (e.g. a webapp's) from being collected.
+	 */
+	public void unregisterResourceScanner(ResourceScanListener listener) {
+		allUncheckedListeners.remove(listener);
+		registry.forget(listener);
+	}
+
 	public List<ClasspathResource> scan(ClassLoader loader) {
 		return scan(loader, true);
 	}
@@ -113,35 +501,78 @@ public class ClasspathScanner {
 			throw new RuntimeException("Attempted to scan without using a URL Class Loader");
 		}
 
-		Classpath cpResources = resources.get((URLClassLoader)loader);
-		if (cpResources == null) {
+		Classpath cpResources = classpath((URLClassLoader)loader);
+
+		if (triggerNotification) {
+			cpResources.triggerNotifications();
+		}
+
+		return cpResources.layered;
+	}
+
+	private Classpath classpath(URLClassLoader loader) {
+		Classpath cpResources = registry.get(loader);
+
+		return cpResources == null ? createClasspath(loader) : cpResources;
+	}
+
+	/**
+	 * Works out the resources of a loader we haven't seen. If another thread gets there first we use its classpath. When
+	 * parents are being scanned the nearest URLClassLoader parent's classpath is shared and anything it already has is
+	 * left out of ours.
+	 */
+	private Classpath createClasspath(URLClassLoader loader) {
+		Classpath parent = configuration.isScanParents() ? parentClasspath(loader) : null;
+		Map<String, ClasspathResource> fileMap = new HashMap<>();
 
-			Map<String, ClasspathResource> fileMap = new HashMap<>();
+		ArrayList<ClasspathResource> myResources = new ArrayList<>();
 
-			URLClassLoader cp = (URLClassLoader)loader;
+		for(URL url : loader.getURLs()) {
+			String path = url.toString();
 
-			ArrayList<ClasspathResource> myResources = new ArrayList<>();
+			if (path.startsWith(JAR_PREFIX)) {
+				processJarResource(path, url, fileMap, myResources);
+			} else if (path.startsWith(FILE_PREFIX)) {
+				processFileResource(path, url, fileMap, myResources);
+			}
+		}
+
+		if (parent != null) {
+			Set<File> inherited = new HashSet<>();
 
-			for(URL url : cp.getURLs()) {
-				String path = url.toString();
+			for(ClasspathResource resource : parent.layered) {
+				inherited.add(resource.getClassesSource());
+			}
 
-				if (path.startsWith(JAR_PREFIX)) {
-					processJarResource(path, url, fileMap, myResources);
-				} else if (path.startsWith(FILE_PREFIX)) {
-					processFileResource(path, url, fileMap, myResources);
+			for(Iterator<ClasspathResource> mine = myResources.iterator(); mine.hasNext(); ) {
+				if (inherited.contains(mine.next().getClassesSource())) {
+					mine.remove();
 				}
 			}
+		}
 
-			cpResources = new Classpath(myResources);
+		Classpath cpResources = new Classpath(myResources, parent);
+		Classpath existing = registry.putIfAbsent(loader, cpResources);
 
-			resources.put(cp, cpResources);
+		if (existing != null) {
+			return existing;
 		}
 
-		if (triggerNotification) {
-			cpResources.triggerNotifications();
+		if (configuration.isWatchDirectories()) {
+			cpResources.watch();
 		}
 
-		return cpResources.classpaths;
+		return cpResources;
+	}
+
+	private Classpath parentClasspath(URLClassLoader loader) {
+		for(ClassLoader parent = loader.getParent(); parent != null; parent = parent.getParent()) {
+			if (parent instanceof URLClassLoader) {
+				return classpath((URLClassLoader)parent);
+			}
+		}
+
+		return null;
 	}
 
 	private void processFileResource(String path, URL url, Map<String, ClasspathResource> fileMap, List<ClasspathResource> myResources) {
@@ -197,6 +628,75 @@ public class ClasspathScanner {
 		}
 	}
 
+	/**
+	 * Forgets everything about a class loader's classpath, e.g. when its webapp is undeployed, and unregisters the
+	 * listeners it (or a loader below it) loaded. Unreleased loaders are forgotten when they are garbage collected.
+	 *
+	 * @param loader - the class loader that has been scanned
+	 * @return - true if it had been scanned
+	 */
+	public boolean release(ClassLoader loader) {
+		boolean released = registry.release(loader);
+
+		for(ResourceScanListener listener : allUncheckedListeners) {
+			if (loadedBy(listener, loader)) {
+				unregisterResourceScanner(listener);
+			}
+		}
+
+		return released;
+	}
+
+	private static boolean loadedBy(ResourceScanListener listener, ClassLoader loader) {
+		for(ClassLoader owner = listener.getClass().getClassLoader(); owner != null; owner = owner.getParent()) {
+			if (owner == loader) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Stops watching the directories of the class loader's classpath.
+	 *
+	 * @param loader - the class loader that has been scanned
+	 */
+	public void stopWatching(ClassLoader loader) {
+		Classpath cp = registry.get(loader);
+
+		if (cp != null) {
+			cp.stopWatching();
+		}
+	}
+
+	/**
+	 * The annotations of the classes found when the loader was scanned, and those of its parents if they are scanned
+	 * too. Only available if annotation indexing was turned on in the configuration before the first scan.
+	 *
+	 * @param loader - the class loader that has been scanned
+	 * @return - the index or null if there isn't one
+	 */
+	public AnnotationIndex getAnnotationIndex(ClassLoader loader) {
+		Classpath cp = registry.get(loader);
+
+		return cp == null || cp.classIndexer == null ? null : cp.classIndexer.annotationIndex;
+	}
+
+	/**
+	 * The class hierarchy of the classes found when the loader was scanned, and those of its parents if they are scanned
+	 * too, shared by everyone interested in it. Only available if hierarchy indexing was turned on in the configuration
+	 * before the first scan.
+	 *
+	 * @param loader - the class loader that has been scanned
+	 * @return - the index or null if there isn't one
+	 */
+	public ClassHierarchyIndex getHierarchyIndex(ClassLoader loader) {
+		Classpath cp = registry.get(loader);
+
+		return cp == null || cp.classIndexer == null ? null : cp.classIndexer.hierarchyIndex;
+	}
+
 	/**
 	 * looks through all of the classpaths we have and finds the one that ends in target/test-classes - if it finds it, it returns its parent.
 	 *
@@ -204,7 +704,7 @@ public class ClasspathScanner {
 	 */
 
 	public static File findTestClassesBasePath() {
-		for(Classpath cp : resources.values()) {
+		for(Classpath cp : registry.values()) {
 			for(ClasspathResource cr : cp.classpaths) {
 				if (cr.isTestClasspath()) {
 					return cr.getClassesSource().getParentFile().getParentFile();
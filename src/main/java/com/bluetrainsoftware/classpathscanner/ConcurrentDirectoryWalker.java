@@ -0,0 +1,391 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Deque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a directory tree with many directories being listed at once. Each entry is looked at with a single attribute
+ * read, which gives its type, size and modification time together, and the resource names are built by the threads
+ * doing the listing. What is found is handed back to the calling thread, which does everything else.
+ *
+ * There are two ways of running it. For classpaths on network file systems, where every listing and stat blocks for a
+ * while, the blocking calls are made on virtual threads when the JVM has them (otherwise on plain daemon threads) with
+ * a bounded number in flight. For local disks, the directories waiting to be listed are shared between the walking
+ * thread and any threads the executor can lend it, so the walk never depends on the executor having a thread free.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ConcurrentDirectoryWalker {
+	private static final Logger log = LoggerFactory.getLogger(ConcurrentDirectoryWalker.class);
+
+	private static ExecutorService ioExecutor;
+
+	/**
+	 * The contents of one directory
+	 */
+	static class Listing {
+		final File[] files;
+		final String[] names;
+
+		/**
+		 * The attributes of each file, null for one that couldn't be read (e.g. a broken link)
+		 */
+		final BasicFileAttributes[] attributes;
+
+		/**
+		 * Set if the listing failed, it is rethrown on the walking thread
+		 */
+		final Throwable failure;
+
+		Listing(File[] files, String[] names, BasicFileAttributes[] attributes, Throwable failure) {
+			this.files = files;
+			this.names = names;
+			this.attributes = attributes;
+			this.failure = failure;
+		}
+	}
+
+	private static final Listing EMPTY = new Listing(new File[0], new String[0], new BasicFileAttributes[0], null);
+
+	interface Visitor {
+		/**
+		 * Called on the walking thread for every file and (non hidden) directory found.
+		 *
+		 * @param name - the same name processDirectory gives it
+		 * @param attributes - what was read about it, null if that failed
+		 */
+		void visit(String name, File file, BasicFileAttributes attributes);
+
+		/**
+		 * Called on any thread before a directory is listed.
+		 *
+		 * @param packageName - the directory's name without a leading /
+		 * @return - false to skip the directory and everything under it
+		 */
+		boolean descend(String packageName);
+	}
+
+	/**
+	 * Bounds the blocking calls in flight, null when walking with the help of an executor
+	 */
+	private final Semaphore permits;
+	private final Executor executor;
+
+	/**
+	 * Set once a walk has started, the tasks ask it which directories to list
+	 */
+	private volatile Visitor visitor;
+
+	private final BlockingQueue<Listing> listings = new LinkedBlockingQueue<>();
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	/**
+	 * The directories waiting to be listed when walking with the help of an executor. The walking thread lists them
+	 * itself rather than wait, the executor may never get to them (e.g. it has one thread and we are on it).
+	 */
+	private final Deque<DirectoryTask> pending = new ConcurrentLinkedDeque<>();
+
+	/**
+	 * Lists whatever directories are waiting, on one of the executor's threads
+	 */
+	private final Runnable helper = new Runnable() {
+		@Override
+		public void run() {
+			DirectoryTask task;
+
+			while ((task = pending.poll()) != null) {
+				task.run();
+			}
+		}
+	};
+
+	/**
+	 * Walks with up to this many directories being listed at once on virtual threads.
+	 */
+	ConcurrentDirectoryWalker(int permits) {
+		this.permits = new Semaphore(Math.max(1, permits));
+		this.executor = ioExecutor();
+	}
+
+	/**
+	 * Walks with the help of the executor's threads, when it has any to spare.
+	 */
+	ConcurrentDirectoryWalker(Executor executor) {
+		this.permits = null;
+		this.executor = executor;
+	}
+
+	/**
+	 * Visits everything in the tree, in no particular order. Hidden directories are skipped.
+	 */
+	void walk(File root, Visitor visitor) {
+		this.visitor = visitor;
+
+		list(root, "");
+
+		while (outstanding.get() > 0 || !listings.isEmpty()) {
+			Listing listing;
+
+			try {
+				listing = take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted walking " + root.getAbsolutePath(), e);
+			}
+
+			outstanding.decrementAndGet();
+
+			if (listing.failure != null) {
+				throw new RuntimeException("Unable to list directory in " + root.getAbsolutePath(), listing.failure);
+			}
+
+			for (int count = 0; count < listing.files.length; count++) {
+				File file = listing.files[count];
+				BasicFileAttributes attributes = listing.attributes[count];
+
+				if (permits != null && attributes != null && attributes.isDirectory()) {
+					String packageName = packageName(listing.names[count]);
+
+					if (visitor.descend(packageName)) {
+						list(file, packageName);
+					}
+				}
+
+				visitor.visit(listing.names[count], file, attributes);
+			}
+		}
+	}
+
+	/**
+	 * Lists the waiting directories ourselves until there is a listing to hand back. Once there are none waiting, the
+	 * rest are being listed on other threads and we wait for them. A parallel scan may be walking on a thread of a
+	 * fork-join pool, so the pool is told we are blocked and can start another thread rather than run out.
+	 */
+	private Listing take() throws InterruptedException {
+		Listing listing;
+		DirectoryTask task;
+
+		while ((listing = listings.poll()) == null && (task = pending.poll()) != null) {
+			task.run();
+		}
+
+		if (listing != null) {
+			return listing;
+		}
+
+		final Listing[] taken = new Listing[1];
+
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			@Override
+			public boolean block() throws InterruptedException {
+				if (taken[0] == null) {
+					taken[0] = listings.take();
+				}
+
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return taken[0] != null || (taken[0] = listings.poll()) != null;
+			}
+		});
+
+		return taken[0];
+	}
+
+	/**
+	 * In the blocking mode the permit is taken here rather than in the task, so there are never more threads than
+	 * permits waiting around. Otherwise the directory waits for whichever thread gets to it first, the executor is
+	 * asked for a thread to help but needn't give one.
+	 */
+	private void list(File directory, String packageName) {
+		DirectoryTask task = new DirectoryTask(directory, packageName);
+
+		outstanding.incrementAndGet();
+
+		if (permits == null) {
+			pending.push(task);
+
+			try {
+				executor.execute(helper);
+			} catch (RejectedExecutionException e) {
+				// the executor is shut down or full, the walking thread will list it
+			}
+
+			return;
+		}
+
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			outstanding.decrementAndGet();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted walking " + directory.getAbsolutePath(), e);
+		}
+
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run(); // the executor is shut down or full, so we list it ourselves
+		} catch (RuntimeException e) {
+			permits.release();
+			outstanding.decrementAndGet();
+
+			throw e;
+		}
+	}
+
+	private class DirectoryTask implements Runnable {
+		private final File directory;
+		private final String packageName;
+
+		DirectoryTask(File directory, String packageName) {
+			this.directory = directory;
+			this.packageName = packageName;
+		}
+
+		@Override
+		public void run() {
+			Listing listing;
+
+			try {
+				listing = read(directory, packageName);
+			} catch (Throwable t) {
+				listing = new Listing(null, null, null, t);
+			} finally {
+				if (permits != null) {
+					permits.release();
+				}
+			}
+
+			if (permits == null && listing.failure == null) {
+				fork(listing);
+			}
+
+			listings.add(listing);
+		}
+
+		/**
+		 * Subdirectories are counted before the listing is handed over, so the walk can't think it has finished.
+		 */
+		private void fork(Listing listing) {
+			for (int count = 0; count < listing.files.length; count++) {
+				BasicFileAttributes attributes = listing.attributes[count];
+
+				String packageName = attributes != null && attributes.isDirectory() ? packageName(listing.names[count]) : null;
+
+				if (packageName != null && visitor.descend(packageName)) {
+					list(listing.files[count], packageName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Only the directories at the top have a leading / on their name, their children are named without one.
+	 */
+	private static String packageName(String directoryName) {
+		return directoryName.charAt(0) == '/' ? directoryName.substring(1) : directoryName;
+	}
+
+	/**
+	 * Lists the directory, reading the attributes of each entry once. Links are followed like File.isDirectory does. A
+	 * directory that can't be read (or has gone since its parent was listed) is empty, like it is to File.listFiles.
+	 */
+	private static Listing read(File directory, String packageName) {
+		List<File> files = new ArrayList<>();
+		List<BasicFileAttributes> attributes = new ArrayList<>();
+
+		try {
+			DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath());
+
+			try {
+				for (Path path : stream) {
+					BasicFileAttributes read;
+
+					try {
+						read = Files.readAttributes(path, BasicFileAttributes.class);
+					} catch (IOException e) {
+						read = null; // a broken link or it has just gone
+					}
+
+					// hidden directories aren't scanned at all
+					if (read != null && read.isDirectory() && path.getFileName().toString().startsWith(".")) {
+						continue;
+					}
+
+					files.add(path.toFile());
+					attributes.add(read);
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (IOException | DirectoryIteratorException e) {
+			log.debug("classpath scan: unable to list {}", directory.getAbsolutePath(), e);
+
+			return EMPTY;
+		}
+
+		String[] names = new String[files.size()];
+
+		for (int count = 0; count < names.length; count++) {
+			String fileName = files.get(count).getName();
+
+			// the names processDirectory gives them
+			names[count] = new StringBuilder(packageName.length() + fileName.length() + 1).append(packageName).append('/').append(fileName).toString();
+		}
+
+		return new Listing(files.toArray(new File[files.size()]), names, attributes.toArray(new BasicFileAttributes[attributes.size()]), null);
+	}
+
+	/**
+	 * A virtual thread per task if the JVM has them (21 onwards), otherwise a pool of daemon threads that grows with
+	 * the permits asked for.
+	 */
+	static synchronized ExecutorService ioExecutor() {
+		if (ioExecutor == null) {
+			try {
+				ioExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (Exception e) {
+				log.debug("virtual threads are not available, using platform threads for directory scanning");
+
+				ioExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "classpath-scanner-io-" + count.incrementAndGet());
+						thread.setDaemon(true);
+
+						return thread;
+					}
+				});
+			}
+		}
+
+		return ioExecutor;
+	}
+}
@@ -0,0 +1,10 @@
+package com.bluetrainsoftware.classpathscanner;
+
+/**
+ * Marks a listener as safe to be called from several scanning threads at the same time. When the scanner runs in
+ * parallel, listeners that do not implement this are only ever called by one thread at a time.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public interface ConcurrentResourceScanListener extends ResourceScanListener {
+}
@@ -0,0 +1,19 @@
+package com.bluetrainsoftware.classpathscanner;
+
+/**
+ * A listener that is shown each resource it is interested in (those that match its filter, if it is also a
+ * FilteredResourceScanListener) through a cursor while the classpath resource is being read, rather than being handed
+ * lists of ScanResources. Nothing is made for a resource unless the listener pins it, and only pinned resources are
+ * delivered. resource() is never called.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public interface CursorResourceScanListener extends ResourceScanListener {
+	/**
+	 * Called on the scanning thread for each resource. Listeners that are not ConcurrentResourceScanListeners are only
+	 * called by one thread at a time.
+	 *
+	 * @param cursor - the resource, only valid until this returns
+	 */
+	void visit(ResourceCursor cursor) throws Exception;
+}
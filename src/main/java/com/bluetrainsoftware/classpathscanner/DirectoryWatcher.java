@@ -0,0 +1,218 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory on the classpath (e.g. target/classes) and remembers which paths have changed, so a rescan only
+ * has to look at those rather than walk the whole tree. Events are coalesced - the change callback is only made once
+ * things have been quiet for the quiet period, so a full recompile is one notification, not thousands.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class DirectoryWatcher implements Runnable {
+	private static final Logger log = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+	/**
+	 * A steady stream of events still gets a notification after this many quiet periods
+	 */
+	private static final int MAX_QUIET_PERIODS = 10;
+
+	private final Path root;
+	private final long quietPeriod;
+	private final Runnable onChange;
+	private final WatchService watchService;
+	private final Thread thread;
+
+	/**
+	 * Only touched by the watching thread once it has started
+	 */
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+
+	/**
+	 * The / separated paths, relative to the root, that have changed since they were last drained
+	 */
+	private Set<String> changed = new HashSet<>();
+	private boolean overflowed;
+
+	private volatile boolean closed;
+
+	DirectoryWatcher(File root, long quietPeriod, Runnable onChange) throws IOException {
+		this.root = root.toPath();
+		this.quietPeriod = quietPeriod;
+		this.onChange = onChange;
+		this.watchService = this.root.getFileSystem().newWatchService();
+
+		register(this.root, false);
+
+		thread = new Thread(this, "classpath-watch " + root.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Watches the directory and everything under it except hidden directories, which the scanner ignores.
+	 *
+	 * @param created - true if the directory has just appeared, so everything in it is a change
+	 */
+	private void register(final Path dir, final boolean created) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException {
+				if (!path.equals(root) && hidden(path)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+
+				keys.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY), path);
+
+				if (created) {
+					changed(path);
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+				if (created) {
+					changed(path);
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path path, IOException exc) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static boolean hidden(Path path) {
+		return path.getFileName().toString().startsWith(".");
+	}
+
+	private synchronized void changed(Path path) {
+		changed.add(root.relativize(path).toString().replace(File.separatorChar, '/'));
+	}
+
+	/**
+	 * Takes the changes seen so far.
+	 *
+	 * @return - the / separated paths relative to the root that have changed, or null if events were lost and the whole
+	 * tree has to be walked
+	 */
+	synchronized Set<String> drain() {
+		Set<String> drained = overflowed ? null : changed;
+
+		changed = new HashSet<>();
+		overflowed = false;
+
+		return drained;
+	}
+
+	@Override
+	public void run() {
+		long firstEvent = 0;
+
+		while (!closed) {
+			WatchKey key;
+
+			try {
+				key = firstEvent == 0 ? watchService.take() : watchService.poll(quietPeriod, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				break;
+			}
+
+			if (key != null) {
+				if (firstEvent == 0) {
+					firstEvent = System.currentTimeMillis();
+				}
+
+				processEvents(key);
+			}
+
+			if (firstEvent != 0 && (key == null || System.currentTimeMillis() - firstEvent > quietPeriod * MAX_QUIET_PERIODS)) {
+				firstEvent = 0;
+
+				try {
+					onChange.run();
+				} catch (RuntimeException e) {
+					log.error("Failed to rescan {} after it changed", root, e);
+				}
+			}
+		}
+	}
+
+	private void processEvents(WatchKey key) {
+		Path dir = keys.get(key);
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+				synchronized (this) {
+					overflowed = true;
+				}
+
+				continue;
+			}
+
+			Path path = dir.resolve((Path) event.context());
+
+			if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				if (hidden(path)) {
+					continue;
+				}
+
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+					try {
+						register(path, true);
+					} catch (IOException e) {
+						log.debug("Unable to watch {}", path, e);
+
+						synchronized (this) {
+							overflowed = true;
+						}
+					}
+				}
+			}
+
+			changed(path);
+		}
+
+		if (!key.reset()) {
+			keys.remove(key);
+		}
+	}
+
+	void close() {
+		closed = true;
+
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			log.debug("Unable to close watch service for {}", root, e);
+		}
+
+		thread.interrupt();
+	}
+}
@@ -0,0 +1,255 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A directory of compressed nested jars that have been inflated so they can be mapped like any other jar. Files are
+ * named after the CRC and size of the nested jar, so the same jar in any war (or any JVM on the host) is only inflated
+ * once. The directory is kept under a size limit by deleting the least recently used files. As the directory may be
+ * shared, a file someone else wrote has its CRC checked the first time this JVM uses it.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ExtractionCache {
+	private static final Logger log = LoggerFactory.getLogger(ExtractionCache.class);
+	private static final String SUFFIX = ".jar";
+
+	public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+	/**
+	 * Where the inflated jars live
+	 */
+	private final File directory;
+
+	private volatile long maxSize;
+
+	/**
+	 * The files this JVM has written or checked, the rest are checked before they are trusted
+	 */
+	private final Set<String> verified = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+
+	public ExtractionCache(File directory) {
+		this(directory, DEFAULT_MAX_SIZE);
+	}
+
+	public ExtractionCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param maxSize - the most bytes of inflated jars to keep, the least recently used go first
+	 */
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return - the number of nested jars that had already been inflated
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return - the number of nested jars that had to be inflated
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return - the number of inflated jars deleted to keep the cache under its size
+	 */
+	public long getEvicted() {
+		return evicted.get();
+	}
+
+	/**
+	 * Finds the inflated copy of a compressed nested jar, inflating it if this is the first time it has been seen.
+	 *
+	 * @param outer - the jar the nested jar is in
+	 * @param index - the nested jar's entry in it
+	 * @return - the inflated copy, or null if it couldn't be written
+	 * @throws IOException - if the nested jar can't be read
+	 */
+	File extract(ZipCentralDirectory outer, int index) throws IOException {
+		long crc = outer.crc(index);
+		long size = outer.size(index);
+		File extracted = new File(directory, Long.toHexString(crc) + "-" + size + SUFFIX);
+
+		if (extracted.length() == size && extracted.isFile() && verify(extracted, crc)) {
+			hits.incrementAndGet();
+
+			// the modification time is the last use, for the eviction
+			extracted.setLastModified(System.currentTimeMillis());
+
+			return extracted;
+		}
+
+		misses.incrementAndGet();
+
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			log.warn("extraction cache: unable to create {}", directory.getAbsolutePath());
+			return null;
+		}
+
+		// written to the side and renamed so other JVMs sharing the directory never see half a jar
+		File temp = File.createTempFile(extracted.getName(), ".tmp", directory);
+
+		try {
+			CheckedInputStream in = new CheckedInputStream(outer.openStream(index), new CRC32());
+
+			try {
+				OutputStream out = new FileOutputStream(temp);
+
+				try {
+					byte[] buffer = new byte[8192];
+					int read;
+
+					while ((read = in.read(buffer)) != -1) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+
+			if (in.getChecksum().getValue() != crc || temp.length() != size) {
+				throw new ZipException("Nested jar " + outer.name(index) + " is corrupt");
+			}
+
+			if (temp.renameTo(extracted)) {
+				verified.add(extracted.getName());
+			} else if (!(extracted.length() == size && extracted.isFile() && verify(extracted, crc))) {
+				log.warn("extraction cache: unable to create {}", extracted.getAbsolutePath());
+				return null;
+			}
+		} finally {
+			temp.delete();
+		}
+
+		evictIfTooLarge(extracted);
+
+		return extracted;
+	}
+
+	/**
+	 * Checks the CRC of a file the first time this JVM uses it, one that doesn't match is deleted so it is extracted
+	 * again.
+	 *
+	 * @return - true if the file can be trusted
+	 */
+	private boolean verify(File extracted, long crc) throws IOException {
+		if (verified.contains(extracted.getName())) {
+			return true;
+		}
+
+		CRC32 checksum = new CRC32();
+		InputStream in = new FileInputStream(extracted);
+
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+
+			while ((read = in.read(buffer)) != -1) {
+				checksum.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+
+		if (checksum.getValue() != crc) {
+			log.warn("extraction cache: {} is corrupt, extracting it again", extracted.getAbsolutePath());
+			extracted.delete();
+
+			return false;
+		}
+
+		verified.add(extracted.getName());
+
+		return true;
+	}
+
+	/**
+	 * Deletes the least recently used jars until the cache fits, never the one just asked for. Files that are still
+	 * mapped can't be deleted on Windows, they are left for a later scan.
+	 */
+	private synchronized void evictIfTooLarge(File keep) {
+		File[] files = directory.listFiles();
+
+		if (files == null) {
+			return;
+		}
+
+		long total = 0;
+		// read once, other JVMs may be touching them while we sort
+		final Map<File, Long> lastUsed = new HashMap<>();
+
+		for (File file : files) {
+			total += file.length();
+			lastUsed.put(file, file.lastModified());
+		}
+
+		if (total <= maxSize) {
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return lastUsed.get(o1).compareTo(lastUsed.get(o2));
+			}
+		});
+
+		for (File file : files) {
+			if (total <= maxSize) {
+				break;
+			}
+
+			if (!file.getName().endsWith(SUFFIX) || file.equals(keep)) {
+				continue;
+			}
+
+			long length = file.length();
+
+			if (file.delete()) {
+				total -= length;
+				evicted.incrementAndGet();
+			}
+		}
+	}
+}
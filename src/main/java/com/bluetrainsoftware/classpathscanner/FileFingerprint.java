@@ -0,0 +1,64 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Identifies a version of a file by its size, modification time and (where the file system has one) its file key,
+ * which is the device and inode on unix.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class FileFingerprint {
+	final long size;
+	final long lastModified;
+	final String fileKey;
+
+	FileFingerprint(long size, long lastModified, String fileKey) {
+		this.size = size;
+		this.lastModified = lastModified;
+		this.fileKey = fileKey == null ? "" : fileKey;
+	}
+
+	/**
+	 * Reads the fingerprint with a single attribute read.
+	 *
+	 * @param file - the file to fingerprint
+	 * @return - the fingerprint or null if the file can't be read
+	 */
+	static FileFingerprint of(File file) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			Object key = attributes.fileKey();
+
+			return new FileFingerprint(attributes.size(), attributes.lastModifiedTime().toMillis(), key == null ? null : key.toString());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof FileFingerprint)) return false;
+
+		FileFingerprint that = (FileFingerprint) o;
+
+		return size == that.size && lastModified == that.lastModified && fileKey.equals(that.fileKey);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = (int) (size ^ (size >>> 32));
+		result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+		result = 31 * result + fileKey.hashCode();
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "size " + size + ", modified " + lastModified + ", key " + fileKey;
+	}
+}
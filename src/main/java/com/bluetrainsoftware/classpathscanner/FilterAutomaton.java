@@ -0,0 +1,187 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.util.Arrays;
+
+/**
+ * The filters of all of the listeners on an offset compiled together, so a name is gone through once rather than
+ * once per pattern per listener. Prefixes, package roots and the literal starts of globs go into a trie that is walked
+ * forwards from the start of the name, suffixes into one walked backwards from the end, and each node says which
+ * listeners' bits a name reaching it has earned. Globs are only run in full for names that get as far as the end of
+ * their literal start.
+ *
+ * It is built for one form of name, text or raw UTF-8 bytes, and doesn't change once built, so any number of threads
+ * can use it.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class FilterAutomaton {
+	private static final char[] NO_LABELS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static class Glob {
+		final ResourceFilter.Pattern pattern;
+		final String form;
+		final long bit;
+
+		Glob(ResourceFilter.Pattern pattern, String form, long bit) {
+			this.pattern = pattern;
+			this.form = form;
+			this.bit = bit;
+		}
+	}
+
+	private static class Node {
+		char[] labels = NO_LABELS;
+		Node[] children = NO_CHILDREN;
+
+		/**
+		 * The bits of the prefixes (or suffixes) that end here
+		 */
+		long mask;
+
+		/**
+		 * The bits of the package roots that end here, they only match if the name does too or carries on with a /
+		 */
+		long rootMask;
+
+		/**
+		 * The globs whose literal start ends here
+		 */
+		Glob[] globs;
+
+		Node child(char c) {
+			for (int count = 0; count < labels.length; count++) {
+				if (labels[count] == c) {
+					return children[count];
+				}
+			}
+
+			return null;
+		}
+
+		Node add(char c) {
+			Node child = child(c);
+
+			if (child == null) {
+				child = new Node();
+
+				labels = Arrays.copyOf(labels, labels.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				labels[labels.length - 1] = c;
+				children[children.length - 1] = child;
+			}
+
+			return child;
+		}
+	}
+
+	private final boolean rawName;
+	private final Node prefixes = new Node();
+	private final Node suffixes = new Node();
+
+	/**
+	 * The bits every name gets, e.g. delta listeners without a filter
+	 */
+	private long always;
+
+	FilterAutomaton(boolean rawName) {
+		this.rawName = rawName;
+	}
+
+	/**
+	 * @param filter - the listener's filter, null if it wants everything
+	 * @param bit - the listener's bit
+	 */
+	void add(ResourceFilter filter, int bit) {
+		long mask = 1L << bit;
+
+		if (filter == null) {
+			always |= mask;
+			return;
+		}
+
+		for (ResourceFilter.Pattern prefix : filter.prefixes) {
+			node(prefixes, prefix.form(rawName), false).mask |= mask;
+		}
+
+		for (ResourceFilter.Pattern suffix : filter.suffixes) {
+			node(suffixes, suffix.form(rawName), true).mask |= mask;
+		}
+
+		for (ResourceFilter.Pattern root : filter.packageRoots) {
+			String form = root.form(rawName);
+
+			if (form.length() == 0) {
+				always |= mask;
+			} else {
+				node(prefixes, form, false).rootMask |= mask;
+			}
+		}
+
+		for (ResourceFilter.Pattern glob : filter.globs) {
+			Node node = node(prefixes, glob.head == null ? "" : glob.head.form(rawName), false);
+
+			node.globs = node.globs == null ? new Glob[1] : Arrays.copyOf(node.globs, node.globs.length + 1);
+			node.globs[node.globs.length - 1] = new Glob(glob, glob.form(rawName), mask);
+		}
+	}
+
+	private static Node node(Node root, String form, boolean backwards) {
+		Node node = root;
+
+		for (int count = 0; count < form.length(); count++) {
+			node = node.add(form.charAt(backwards ? form.length() - 1 - count : count));
+		}
+
+		return node;
+	}
+
+	/**
+	 * @param name - the name, in the form the automaton was built for
+	 * @param start - where the name starts (i.e. after any jar offset)
+	 * @param end - where it ends (i.e. before any trailing /)
+	 * @return - the bits of the listeners whose filters match it
+	 */
+	long match(CharSequence name, int start, int end) {
+		long mask = always;
+
+		Node node = prefixes;
+		int at = start;
+
+		while (node != null) {
+			mask |= node.mask;
+
+			if (node.rootMask != 0 && (at == end || name.charAt(at) == '/')) {
+				mask |= node.rootMask;
+			}
+
+			if (node.globs != null) {
+				mask |= globs(node.globs, mask, name, start, end);
+			}
+
+			node = at < end ? node.child(name.charAt(at++)) : null;
+		}
+
+		node = suffixes;
+		at = end;
+
+		while (node != null) {
+			mask |= node.mask;
+			node = at > start ? node.child(name.charAt(--at)) : null;
+		}
+
+		return mask;
+	}
+
+	private long globs(Glob[] globs, long mask, CharSequence name, int start, int end) {
+		RawName raw = rawName && name instanceof RawName ? (RawName) name : null;
+
+		for (Glob glob : globs) {
+			if ((mask & glob.bit) == 0 && glob.pattern.couldMatch(name, start, end, raw) && ResourceFilter.glob(glob.form, 0, name, start, end, rawName)) {
+				mask |= glob.bit;
+			}
+		}
+
+		return mask;
+	}
+}
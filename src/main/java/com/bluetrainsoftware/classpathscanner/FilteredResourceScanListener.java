@@ -0,0 +1,17 @@
+package com.bluetrainsoftware.classpathscanner;
+
+/**
+ * A listener that declares which resources it wants up front. The scanner tests every entry against the filters of
+ * all of the listeners interested in a classpath resource in one pass, and each listener is only handed the resources
+ * that match its own filter.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public interface FilteredResourceScanListener extends ResourceScanListener {
+	/**
+	 * Asked once for each classpath resource the listener is interested in.
+	 *
+	 * @return - the filter, or null to be told about everything
+	 */
+	ResourceFilter getResourceFilter();
+}
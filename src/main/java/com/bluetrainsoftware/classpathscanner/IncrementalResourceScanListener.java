@@ -0,0 +1,18 @@
+package com.bluetrainsoftware.classpathscanner;
+
+/**
+ * A REPEAT listener that only wants to hear about what has changed. The first scan of a classpath resource is
+ * delivered as normal; after that resource() and deliver() are only called for resources that have been added or
+ * modified since the previous scan, and delta() is called once the resource has been scanned with everything that
+ * changed, including what was removed. If nothing changed, nothing is called.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public interface IncrementalResourceScanListener extends ResourceScanListener {
+	/**
+	 * The changes to one classpath resource (or offset within it) since the last scan.
+	 *
+	 * @param delta - what changed
+	 */
+	void delta(ScanDelta delta);
+}
@@ -0,0 +1,234 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * A compact description of what is in a jar: the directories its entries are in and a Bloom filter of the entry names.
+ * It is enough to tell that a listener's filter can't match anything in the jar without opening it, and it is kept in
+ * the scan index with the jar's fingerprint so it is only worked out once per version of a jar.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class JarSummary {
+	private static final int BITS_PER_NAME = 8;
+	private static final int HASHES = 4;
+
+	/**
+	 * Every directory that has something in it, and their parents, sorted and without a trailing /
+	 */
+	private final String[] packages;
+
+	/**
+	 * Are there entries that aren't in a directory
+	 */
+	private final boolean topLevel;
+	private final long[] bloom;
+	private final int size;
+
+	private JarSummary(String[] packages, boolean topLevel, long[] bloom, int size) {
+		this.packages = packages;
+		this.topLevel = topLevel;
+		this.bloom = bloom;
+		this.size = size;
+	}
+
+	static JarSummary of(ZipCentralDirectory directory) {
+		String[] names = new String[directory.size()];
+
+		for (int index = 0; index < names.length; index++) {
+			names[index] = directory.name(index);
+		}
+
+		return of(names);
+	}
+
+	static JarSummary of(String[] names) {
+		TreeSet<String> packages = new TreeSet<>();
+		boolean topLevel = false;
+		long[] bloom = new long[Math.max(1, (names.length * BITS_PER_NAME + 63) / 64)];
+
+		for (String name : names) {
+			boolean directory = name.endsWith("/");
+
+			if (directory) {
+				name = name.substring(0, name.length() - 1);
+			}
+
+			add(bloom, name);
+
+			// the parents are added until we get to one we have already seen
+			int slash = name.lastIndexOf('/');
+
+			if (slash < 0) {
+				topLevel = true;
+			}
+
+			while (slash > 0 && packages.add(name.substring(0, slash))) {
+				slash = name.lastIndexOf('/', slash - 1);
+			}
+
+			if (directory) {
+				packages.add(name);
+			}
+		}
+
+		return new JarSummary(packages.toArray(new String[packages.size()]), topLevel, bloom, names.length);
+	}
+
+	/**
+	 * @return - the number of entries in the jar
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param filter - a listener's filter
+	 * @param jarOffset - where in the jar the listener's resources are
+	 * @return - false if the filter can't match anything in the jar
+	 */
+	boolean couldMatch(ResourceFilter filter, String jarOffset) {
+		// a suffix could be anywhere
+		if (!filter.suffixes.isEmpty()) {
+			return true;
+		}
+
+		for (ResourceFilter.Pattern prefix : filter.prefixes) {
+			if (couldStartWith(jarOffset + prefix.text)) {
+				return true;
+			}
+		}
+
+		for (ResourceFilter.Pattern root : filter.packageRoots) {
+			String name = jarOffset + root.text;
+
+			if (root.text.isEmpty() ? couldStartWith(jarOffset) : hasPackage(name) || mightContain(name)) {
+				return true;
+			}
+		}
+
+		for (ResourceFilter.Pattern glob : filter.globs) {
+			int wild = 0;
+
+			while (wild < glob.text.length() && glob.text.charAt(wild) != '*' && glob.text.charAt(wild) != '?') {
+				wild ++;
+			}
+
+			String literal = jarOffset + glob.text.substring(0, wild);
+
+			if (wild == glob.text.length() ? hasPackage(literal) || mightContain(literal) : couldStartWith(literal)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Only the directories are known exactly, so if the names in a directory could start with the prefix we have to
+	 * say yes.
+	 */
+	private boolean couldStartWith(String prefix) {
+		if (prefix.isEmpty()) {
+			return size > 0;
+		}
+
+		int slash = prefix.lastIndexOf('/');
+
+		if (slash == prefix.length() - 1) {
+			return hasPackage(prefix.substring(0, slash));
+		}
+
+		int at = Arrays.binarySearch(packages, prefix);
+
+		if (at >= 0 || (-at - 1 < packages.length && packages[-at - 1].startsWith(prefix))) {
+			return true;
+		}
+
+		return slash < 0 ? topLevel : hasPackage(prefix.substring(0, slash));
+	}
+
+	private boolean hasPackage(String name) {
+		return Arrays.binarySearch(packages, name) >= 0;
+	}
+
+	/**
+	 * @return - false if the name is definitely not in the jar
+	 */
+	boolean mightContain(String name) {
+		int hash = name.hashCode();
+		int step = mix(hash);
+		int bits = bloom.length * 64;
+
+		for (int count = 0; count < HASHES; count++) {
+			int bit = ((hash + count * step) & 0x7fffffff) % bits;
+
+			if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static void add(long[] bloom, String name) {
+		int hash = name.hashCode();
+		int step = mix(hash);
+		int bits = bloom.length * 64;
+
+		for (int count = 0; count < HASHES; count++) {
+			int bit = ((hash + count * step) & 0x7fffffff) % bits;
+
+			bloom[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * A second hash for double hashing, odd so it never steps on the spot
+	 */
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+
+		return hash | 1;
+	}
+
+	void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeBoolean(topLevel);
+		out.writeInt(packages.length);
+
+		for (String name : packages) {
+			out.writeUTF(name);
+		}
+
+		out.writeInt(bloom.length);
+
+		for (long bits : bloom) {
+			out.writeLong(bits);
+		}
+	}
+
+	static JarSummary read(DataInput in) throws IOException {
+		int size = in.readInt();
+		boolean topLevel = in.readBoolean();
+		String[] packages = new String[in.readInt()];
+
+		for (int count = 0; count < packages.length; count++) {
+			packages[count] = in.readUTF();
+		}
+
+		long[] bloom = new long[in.readInt()];
+
+		for (int count = 0; count < bloom.length; count++) {
+			bloom[count] = in.readLong();
+		}
+
+		return new JarSummary(packages, topLevel, bloom, size);
+	}
+}
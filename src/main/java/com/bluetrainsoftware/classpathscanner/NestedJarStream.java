@@ -0,0 +1,104 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A compressed jar inside a jar can't be mapped, so it is read front to back as a stream. Its entries are listed in one
+ * pass and their contents handed out by reading forward through another, only starting again if someone asks for an
+ * entry we have already gone past.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class NestedJarStream implements ClasspathResource.ContentSource {
+	private final ZipCentralDirectory outer;
+	private final int index;
+
+	/**
+	 * Where each entry is in the stream
+	 */
+	private final Map<JarEntry, Integer> ordinals = new IdentityHashMap<>();
+
+	private ZipInputStream stream;
+	private int position;
+
+	/**
+	 * @param outer - the jar the nested jar is in
+	 * @param index - the nested jar's entry in it
+	 */
+	NestedJarStream(ZipCentralDirectory outer, int index) {
+		this.outer = outer;
+		this.index = index;
+	}
+
+	/**
+	 * Reads through the nested jar once. The sizes and CRCs of entries written with data descriptors are only known once
+	 * they have been read past, so they are all complete by the time this returns.
+	 */
+	List<JarEntry> entries() throws IOException {
+		List<JarEntry> entries = new ArrayList<>();
+		ZipInputStream listing = new ZipInputStream(outer.openStream(index));
+
+		try {
+			ZipEntry entry;
+
+			while ((entry = listing.getNextEntry()) != null) {
+				JarEntry jarEntry = entry instanceof JarEntry ? (JarEntry) entry : new JarEntry(entry);
+
+				ordinals.put(jarEntry, entries.size());
+				entries.add(jarEntry);
+			}
+		} finally {
+			listing.close();
+		}
+
+		return entries;
+	}
+
+	@Override
+	public synchronized InputStream open(ResourceScanListener.ScanResource resource) throws IOException {
+		Integer ordinal = ordinals.get(resource.entry);
+
+		if (ordinal == null) {
+			return null;
+		}
+
+		// an entry can only be read once, asking for it again means starting again
+		if (stream == null || ordinal <= position) {
+			close();
+
+			stream = new ZipInputStream(outer.openStream(index));
+			position = -1;
+		}
+
+		while (position < ordinal) {
+			if (stream.getNextEntry() == null) {
+				return null;
+			}
+
+			position ++;
+		}
+
+		// the next open reads on from here, so the entry's stream must not close the jar's
+		return new FilterInputStream(stream) {
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	synchronized void close() throws IOException {
+		if (stream != null) {
+			stream.close();
+			stream = null;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a list of tasks on an executor. The calling thread takes tasks as well, so a busy or tiny executor can never
+ * leave the scan waiting on work that nobody has picked up.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ParallelRunner {
+	private final List<? extends Runnable> tasks;
+	private final AtomicInteger next = new AtomicInteger();
+	private final CountDownLatch finished;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	private ParallelRunner(List<? extends Runnable> tasks) {
+		this.tasks = tasks;
+		this.finished = new CountDownLatch(tasks.size());
+	}
+
+	/**
+	 * Runs all of the tasks, returning once they have all completed. The first failure is rethrown.
+	 *
+	 * @param executor - where the helper threads come from
+	 * @param tasks - the work to do
+	 */
+	static void run(Executor executor, List<? extends Runnable> tasks) {
+		if (tasks.size() == 1) {
+			tasks.get(0).run();
+			return;
+		}
+
+		final ParallelRunner runner = new ParallelRunner(tasks);
+
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				runner.work();
+			}
+		};
+
+		try {
+			for (int count = 1; count < tasks.size(); count++) {
+				executor.execute(worker);
+			}
+		} catch (RejectedExecutionException e) {
+			// the executor is shut down or full, the calling thread works through whatever is left
+		}
+
+		runner.work();
+
+		try {
+			runner.finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for scan to complete", e);
+		}
+
+		Throwable t = runner.failure.get();
+
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		} else if (t instanceof Error) {
+			throw (Error)t;
+		} else if (t != null) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	private void work() {
+		int pos;
+
+		while ((pos = next.getAndIncrement()) < tasks.size()) {
+			try {
+				if (failure.get() == null) {
+					tasks.get(pos).run();
+				}
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			} finally {
+				finished.countDown();
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable view of a name in a central directory as one char per UTF-8 byte, so names can be matched without
+ * decoding them into Strings.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class RawName implements CharSequence {
+	private ByteBuffer buffer;
+	private int start;
+	private int length;
+
+	RawName set(ByteBuffer buffer, int start, int length) {
+		this.buffer = buffer;
+		this.start = start;
+		this.length = length;
+
+		return this;
+	}
+
+	/**
+	 * @param at - where in the name the literal should be
+	 * @param end - where the part of the name being matched ends
+	 * @return - true if the literal is there and fits before the end
+	 */
+	boolean regionMatches(int at, int end, ByteLiteral literal) {
+		return at >= 0 && at + literal.length() <= Math.min(end, length) && literal.at(buffer, start + at);
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char)(buffer.get(start + index) & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		return new RawName().set(buffer, start + from, to - from);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(length);
+
+		for (int count = 0; count < length; count++) {
+			sb.append(charAt(count));
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,249 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.jar.JarEntry;
+
+/**
+ * The resource a CursorResourceScanListener is being shown. There is one cursor per scanning thread and it is moved
+ * from resource to resource, so nothing about a resource is allocated unless a listener asks for it. The cursor, and
+ * the name it hands out, are only valid during the call to visit; pin the resource to keep it.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ResourceCursor {
+	private URL url;
+	private URL offsetUrl;
+
+	/**
+	 * Only one of these is set, depending on where the resource came from
+	 */
+	private File file;
+	private JarEntry entry;
+	private ZipCentralDirectory directory;
+
+	private BasicFileAttributes attributes;
+	private int directoryIndex;
+
+	/**
+	 * The whole name as it was found, either text or raw UTF-8 bytes. The resource name is the part from start to end.
+	 */
+	private CharSequence found;
+	private int start;
+	private int end;
+	private boolean rawName;
+
+	private final Name name = new Name();
+
+	/**
+	 * Made the first time anyone needs it for this resource
+	 */
+	private ResourceScanListener.ScanResource resource;
+	private boolean pinned;
+
+	/**
+	 * The listener being visited, it is who pins the resource
+	 */
+	ResourceScanListener visiting;
+
+	/**
+	 * A view of part of the name that doesn't copy it
+	 */
+	private class Name implements CharSequence {
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return found.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return found.subSequence(start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return found.subSequence(start, end).toString();
+		}
+	}
+
+	ResourceCursor file(URL url, File file, String resourceName, BasicFileAttributes attributes) {
+		clear();
+
+		this.url = url;
+		this.offsetUrl = url;
+		this.file = file;
+		this.attributes = attributes;
+
+		return name(resourceName, 0, resourceName.length(), false);
+	}
+
+	/**
+	 * @param strip - the length of the jar offset the entry is in
+	 */
+	ResourceCursor jarEntry(URL url, JarEntry entry, int strip, URL offsetUrl) {
+		clear();
+
+		this.url = url;
+		this.offsetUrl = offsetUrl;
+		this.entry = entry;
+
+		String entryName = entry.getName();
+
+		return name(entryName, strip, entryName.endsWith("/") ? entryName.length() - 1 : entryName.length(), false);
+	}
+
+	/**
+	 * @param rawName - the entry's raw name, it must stay pointing at it while the cursor is on the entry
+	 * @param strip - the length in bytes of the jar offset the entry is in
+	 */
+	ResourceCursor mapped(URL url, ZipCentralDirectory directory, int index, RawName rawName, int strip, URL offsetUrl) {
+		clear();
+
+		this.url = url;
+		this.offsetUrl = offsetUrl;
+		this.directory = directory;
+		this.directoryIndex = index;
+
+		int length = rawName.length();
+
+		return name(rawName, strip, length > 0 && rawName.charAt(length - 1) == '/' ? length - 1 : length, true);
+	}
+
+	private ResourceCursor name(CharSequence found, int start, int end, boolean rawName) {
+		this.found = found;
+		this.start = start;
+		this.end = Math.max(start, end);
+		this.rawName = rawName;
+
+		return this;
+	}
+
+	private void clear() {
+		file = null;
+		entry = null;
+		directory = null;
+		attributes = null;
+		resource = null;
+		pinned = false;
+	}
+
+	/**
+	 * The name the ScanResource would have, e.g. com/bluetrainsoftware/Fred.class. Names in jars read with the MAPPED
+	 * engine are viewed straight out of the central directory, unless they have characters outside of ASCII in which
+	 * case they have to be decoded.
+	 *
+	 * @return - a view of the name that is only valid until the cursor moves, call toString to keep it
+	 */
+	public CharSequence getName() {
+		if (rawName) {
+			for (int count = start; count < end; count++) {
+				if (found.charAt(count) >= 0x80) {
+					return directory.name(directoryIndex, start, true);
+				}
+			}
+		}
+
+		return name;
+	}
+
+	/**
+	 * @return - the uncompressed size of the resource, -1 if it isn't known
+	 */
+	public long getSize() {
+		if (entry != null) {
+			return entry.getSize();
+		} else if (directory != null) {
+			return directory.size(directoryIndex);
+		} else if (attributes != null) {
+			return attributes.size();
+		}
+
+		return file.length();
+	}
+
+	/**
+	 * @return - the CRC-32 of a resource in a jar, -1 for a file or if it isn't known
+	 */
+	public long getCrc() {
+		if (entry != null) {
+			return entry.getCrc();
+		} else if (directory != null) {
+			return directory.crc(directoryIndex);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return - the URL of the directory or jar the resource is in
+	 */
+	public URL getSource() {
+		return url;
+	}
+
+	/**
+	 * @return - the URL of the offset within the jar, the same as the source if there is no offset
+	 */
+	public URL getOffsetUrl() {
+		return offsetUrl;
+	}
+
+	public boolean isDirectory() {
+		if (file != null) {
+			return attributes != null ? attributes.isDirectory() : file.isDirectory();
+		}
+
+		return end < found.length() && found.charAt(end) == '/';
+	}
+
+	/**
+	 * Keeps the resource the cursor is on. Its content is delivered to the listener once the batch it is in is complete,
+	 * as if the listener had returned it from resource().
+	 *
+	 * @return - the resource, the same one for every listener that pins it
+	 */
+	public ResourceScanListener.ScanResource pin() {
+		ResourceScanListener.ScanResource scanResource = resource();
+
+		if (scanResource.pinnedBy == null) {
+			scanResource.pinnedBy = new ArrayList<>(2);
+		}
+
+		if (!scanResource.pinnedBy.contains(visiting)) {
+			scanResource.pinnedBy.add(visiting);
+		}
+
+		pinned = true;
+
+		return scanResource;
+	}
+
+	boolean isPinned() {
+		return pinned;
+	}
+
+	/**
+	 * @return - the resource the cursor is on, made the same way the scanner would have made it
+	 */
+	ResourceScanListener.ScanResource resource() {
+		if (resource == null) {
+			if (file != null) {
+				resource = new ResourceScanListener.ScanResource(url, file, found.toString());
+				resource.attributes = attributes;
+			} else if (entry != null) {
+				resource = new ResourceScanListener.ScanResource(url, entry, name.toString(), offsetUrl);
+			} else {
+				resource = new ResourceScanListener.ScanResource(url, directory, directoryIndex, directory.name(directoryIndex, start, true), offsetUrl);
+			}
+		}
+
+		return resource;
+	}
+}
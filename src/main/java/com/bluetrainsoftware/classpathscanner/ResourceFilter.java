@@ -0,0 +1,346 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A declarative description of the resources a listener wants. A resource matches if any of the prefixes, suffixes,
+ * globs or package roots match its / separated name (e.g. com/bluetrainsoftware/Fred.class), so the scanner can test
+ * entries while it is enumerating them and never create a ScanResource for anything nobody wants.
+ *
+ * Globs use * for any characters within a directory, ** for any characters across directories and ? for a single
+ * character. Package roots accept either . or / separators and match the package itself and everything under it.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ResourceFilter {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	/**
+	 * A pattern as text, for matching names we already have as Strings, and as its UTF-8 bytes (one char per byte),
+	 * for matching raw names straight out of a jar's central directory.
+	 */
+	static class Pattern {
+		final String text;
+		final String raw;
+		final ByteLiteral literal;
+
+		/**
+		 * For a glob, the literal text before its first wildcard and after its last, which any name it matches has to
+		 * start and end with. Null if there isn't any.
+		 */
+		Pattern head;
+		Pattern tail;
+
+		Pattern(String text) {
+			this.text = text;
+			this.literal = new ByteLiteral(text);
+			this.raw = new String(literal.bytes, LATIN1);
+		}
+
+		static Pattern glob(String text) {
+			Pattern glob = new Pattern(text);
+			int first = 0;
+
+			while (first < text.length() && text.charAt(first) != '*' && text.charAt(first) != '?') {
+				first ++;
+			}
+
+			if (first > 0) {
+				glob.head = new Pattern(text.substring(0, first));
+			}
+
+			int last = Math.max(text.lastIndexOf('*'), text.lastIndexOf('?'));
+
+			if (last >= 0 && last < text.length() - 1) {
+				String tail = text.substring(last + 1);
+
+				// **/ can be no directories at all, so the / isn't always there
+				if (last > 0 && text.charAt(last - 1) == '*' && tail.startsWith("/")) {
+					tail = tail.substring(1);
+				}
+
+				if (tail.length() > 0) {
+					glob.tail = new Pattern(tail);
+				}
+			}
+
+			return glob;
+		}
+
+		/**
+		 * The cheap test of a glob before the full one, most names fail it.
+		 */
+		boolean couldMatch(CharSequence name, int start, int end, RawName rawName) {
+			if (head != null && !(rawName != null ? rawName.regionMatches(start, end, head.literal) : regionMatches(name, start, end, head.text, start))) {
+				return false;
+			}
+
+			if (tail != null) {
+				int at = end - (rawName != null ? tail.literal.length() : tail.text.length());
+
+				return rawName != null ? at >= start && rawName.regionMatches(at, end, tail.literal) : regionMatches(name, start, end, tail.text, at);
+			}
+
+			return true;
+		}
+
+		String form(boolean rawName) {
+			return rawName ? raw : text;
+		}
+	}
+
+	final List<Pattern> prefixes = new ArrayList<>();
+	final List<Pattern> suffixes = new ArrayList<>();
+	final List<Pattern> globs = new ArrayList<>();
+	final List<Pattern> packageRoots = new ArrayList<>();
+
+	public ResourceFilter prefix(String... prefixes) {
+		for (String prefix : prefixes) {
+			this.prefixes.add(new Pattern(stripSlash(prefix)));
+		}
+
+		return this;
+	}
+
+	public ResourceFilter suffix(String... suffixes) {
+		for (String suffix : suffixes) {
+			this.suffixes.add(new Pattern(suffix));
+		}
+
+		return this;
+	}
+
+	public ResourceFilter glob(String... globs) {
+		for (String glob : globs) {
+			this.globs.add(Pattern.glob(stripSlash(glob)));
+		}
+
+		return this;
+	}
+
+	/**
+	 * @param packageRoots - e.g. com.bluetrainsoftware or com/bluetrainsoftware
+	 */
+	public ResourceFilter packageRoot(String... packageRoots) {
+		for (String root : packageRoots) {
+			root = stripSlash(root.replace('.', '/'));
+
+			if (root.endsWith("/")) {
+				root = root.substring(0, root.length() - 1);
+			}
+
+			this.packageRoots.add(new Pattern(root));
+		}
+
+		return this;
+	}
+
+	/**
+	 * @return true if nothing has been declared, which matches nothing
+	 */
+	public boolean isEmpty() {
+		return prefixes.isEmpty() && suffixes.isEmpty() && globs.isEmpty() && packageRoots.isEmpty();
+	}
+
+	/**
+	 * What every name this filter matches has to start with, so the scanner can skip the parts of a directory or jar
+	 * that can't match. Suffixes can match anywhere, so a filter with any has no roots.
+	 *
+	 * @return - the / separated roots, or null if a match could be anywhere
+	 */
+	List<String> roots() {
+		if (!suffixes.isEmpty()) {
+			return null;
+		}
+
+		List<String> roots = new ArrayList<>();
+
+		for (Pattern prefix : prefixes) {
+			roots.add(prefix.text);
+		}
+
+		for (Pattern root : packageRoots) {
+			roots.add(root.text);
+		}
+
+		for (Pattern glob : globs) {
+			int wild = 0;
+
+			while (wild < glob.text.length() && glob.text.charAt(wild) != '*' && glob.text.charAt(wild) != '?') {
+				wild ++;
+			}
+
+			roots.add(glob.text.substring(0, wild));
+		}
+
+		for (String root : roots) {
+			if (root.length() == 0) {
+				return null;
+			}
+		}
+
+		return roots;
+	}
+
+	/**
+	 * Tests a resource name as handed out in a ScanResource. Leading and trailing slashes are ignored.
+	 *
+	 * @param resourceName - the / separated name
+	 * @return - true if any of the patterns match
+	 */
+	public boolean matches(String resourceName) {
+		int start = resourceName.startsWith("/") ? 1 : 0;
+		int end = resourceName.length();
+
+		if (end > start && resourceName.charAt(end - 1) == '/') {
+			end --;
+		}
+
+		return matches(resourceName, start, end, false);
+	}
+
+	/**
+	 * Tests part of a name without having to cut it out first.
+	 *
+	 * @param name - the name, either text or raw UTF-8 bytes with one char per byte
+	 * @param start - where the name starts (i.e. after any jar offset)
+	 * @param end - where it ends (i.e. before any trailing /)
+	 * @param rawName - true if the name is raw UTF-8 bytes
+	 */
+	boolean matches(CharSequence name, int start, int end, boolean rawName) {
+		// names straight out of a central directory are compared a word at a time
+		RawName raw = rawName && name instanceof RawName ? (RawName) name : null;
+
+		for (Pattern prefix : prefixes) {
+			if (raw != null ? raw.regionMatches(start, end, prefix.literal) : regionMatches(name, start, end, prefix.form(rawName), start)) {
+				return true;
+			}
+		}
+
+		for (Pattern suffix : suffixes) {
+			String form = suffix.form(rawName);
+			int at = end - form.length();
+
+			if (at >= start && (raw != null ? raw.regionMatches(at, end, suffix.literal) : regionMatches(name, start, end, form, at))) {
+				return true;
+			}
+		}
+
+		for (Pattern root : packageRoots) {
+			String form = root.form(rawName);
+			int rootEnd = start + form.length();
+
+			if (form.length() == 0 ||
+				((raw != null ? raw.regionMatches(start, end, root.literal) : regionMatches(name, start, end, form, start)) && (rootEnd == end || name.charAt(rootEnd) == '/'))) {
+				return true;
+			}
+		}
+
+		for (Pattern glob : globs) {
+			if (glob.couldMatch(name, start, end, raw) && glob(glob.form(rawName), 0, name, start, end, rawName)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean regionMatches(CharSequence name, int start, int end, String pattern, int at) {
+		if (at < start || at + pattern.length() > end) {
+			return false;
+		}
+
+		for (int count = 0; count < pattern.length(); count ++) {
+			if (name.charAt(at + count) != pattern.charAt(count)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	static boolean glob(String pattern, int pos, CharSequence name, int at, int end, boolean rawName) {
+		int length = pattern.length();
+
+		while (pos < length) {
+			char c = pattern.charAt(pos);
+
+			if (c == '*') {
+				if (pos + 1 < length && pattern.charAt(pos + 1) == '*') {
+					pos += 2;
+
+					if (pos < length && pattern.charAt(pos) == '/') {
+						// **/ is zero or more whole directories
+						pos ++;
+
+						if (glob(pattern, pos, name, at, end, rawName)) {
+							return true;
+						}
+
+						for (int next = at; next < end; next ++) {
+							if (name.charAt(next) == '/' && glob(pattern, pos, name, next + 1, end, rawName)) {
+								return true;
+							}
+						}
+
+						return false;
+					}
+
+					for (int next = at; next <= end; next ++) {
+						if (glob(pattern, pos, name, next, end, rawName)) {
+							return true;
+						}
+					}
+
+					return false;
+				}
+
+				pos ++;
+
+				for (int next = at; next <= end; next ++) {
+					if (glob(pattern, pos, name, next, end, rawName)) {
+						return true;
+					}
+
+					if (next < end && name.charAt(next) == '/') {
+						break;
+					}
+				}
+
+				return false;
+			}
+
+			if (at >= end) {
+				return false;
+			}
+
+			if (c == '?') {
+				if (name.charAt(at) == '/') {
+					return false;
+				}
+
+				at ++;
+
+				// a single character may be several bytes in a raw name
+				while (rawName && at < end && (name.charAt(at) & 0xC0) == 0x80) {
+					at ++;
+				}
+			} else if (c != name.charAt(at)) {
+				return false;
+			} else {
+				at ++;
+			}
+
+			pos ++;
+		}
+
+		return at == end;
+	}
+
+	private static String stripSlash(String pattern) {
+		return pattern.startsWith("/") ? pattern.substring(1) : pattern;
+	}
+}
@@ -5,6 +5,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 import java.util.jar.JarEntry;
 
@@ -48,7 +49,7 @@ public interface ResourceScanListener {
 		 */
 		public final URL offsetUrl;
 		/**
-		 * The JarEntry if this resource came from a jar
+		 * The JarEntry if this resource came from a jar read with the JAR_FILE engine
 		 */
 		public final JarEntry entry;
 		/**
@@ -63,12 +64,40 @@ public interface ResourceScanListener {
 		 */
 		public final String resourceName;
 
+		/**
+		 * The central directory and entry index if this resource came from a jar read with the MAPPED engine
+		 */
+		final ZipCentralDirectory directory;
+		final int directoryIndex;
+
+		/**
+		 * What was read about the file when its directory was walked, if it was, so it isn't read again
+		 */
+		BasicFileAttributes attributes;
+
+		/**
+		 * Which of the filtered listeners wanted this resource when it was found
+		 */
+		long interest = -1L;
+
+		/**
+		 * The CursorResourceScanListeners that pinned this resource
+		 */
+		List<ResourceScanListener> pinnedBy;
+
+		/**
+		 * The parsed class, shared by all of the ClassScanListeners that wanted it
+		 */
+		volatile ClassFileInfo classInfo;
+
 		public ScanResource(URL url, JarEntry entry, String resourceName, URL offsetUrl) {
 			this.url = url;
 			this.resourceName = resourceName;
 			this.entry = entry;
 			this.offsetUrl = offsetUrl;
 			this.file = null;
+			this.directory = null;
+			this.directoryIndex = -1;
 		}
 
 		public ScanResource(URL url, File file, String resourceName) {
@@ -78,6 +107,54 @@ public interface ResourceScanListener {
 			this.entry = null;
 			this.offsetUrl = url;
 			this.file = file;
+			this.directory = null;
+			this.directoryIndex = -1;
+		}
+
+		ScanResource(URL url, ZipCentralDirectory directory, int directoryIndex, String resourceName, URL offsetUrl) {
+			this.url = url;
+			this.resourceName = resourceName;
+			this.offsetUrl = offsetUrl;
+			this.directory = directory;
+			this.directoryIndex = directoryIndex;
+
+			this.entry = null;
+			this.file = null;
+		}
+
+		/**
+		 * @return - true if the resource is a class file
+		 */
+		public boolean isClass() {
+			return resourceName.endsWith(".class");
+		}
+
+		/**
+		 * The parsed class, once it has been delivered to a ClassScanListener.
+		 *
+		 * @return - the class structure or null if it hasn't been parsed
+		 */
+		public ClassFileInfo getClassInfo() {
+			return classInfo;
+		}
+
+		/**
+		 * The uncompressed size of the resource, whichever way it was found.
+		 *
+		 * @return - the size in bytes or -1 if it isn't known
+		 */
+		public long getSize() {
+			if (entry != null) {
+				return entry.getSize();
+			} else if (directory != null) {
+				return directory.size(directoryIndex);
+			} else if (attributes != null) {
+				return attributes.size();
+			} else if (file != null) {
+				return file.length();
+			}
+
+			return -1;
 		}
 
 		private URL finalUrl = null;
@@ -0,0 +1,162 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a classpath resource looked like at the end of the last scan - a fingerprint for each entry name, and for jars
+ * the fingerprint of the jar itself - so the next scan can work out what changed.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ResourceSnapshot {
+	static final int UNCHANGED = 0;
+	static final int ADDED = 1;
+	static final int MODIFIED = 2;
+
+	/**
+	 * Directories change whenever their contents do, so they all get the same fingerprint and are only added or removed
+	 */
+	static final long DIRECTORY = 0;
+
+	/**
+	 * The entries as of the last scan, null if there hasn't been one
+	 */
+	private Map<String, Long> entries;
+
+	/**
+	 * The entries being found by the current scan
+	 */
+	private Map<String, Long> next;
+
+	/**
+	 * The names removed when only the changes are being applied
+	 */
+	private List<String> removed;
+
+	/**
+	 * The jar's fingerprint as of the last scan, null for directories
+	 */
+	FileFingerprint fingerprint;
+
+	/**
+	 * The incremental listeners that have had a full scan and now only want changes
+	 */
+	final Set<ResourceScanListener> caughtUp = new HashSet<>();
+
+	boolean hasPrevious() {
+		return entries != null;
+	}
+
+	void begin() {
+		next = new HashMap<>(entries == null ? 256 : entries.size() * 4 / 3 + 1);
+		removed = null;
+	}
+
+	/**
+	 * Starts a scan that only tracks and removes the entries that may have changed, everything else stays as it was.
+	 */
+	void beginChanges() {
+		next = entries;
+		removed = new ArrayList<>();
+	}
+
+	boolean isRecording() {
+		return next != null;
+	}
+
+	/**
+	 * Records an entry in the scan that is underway.
+	 *
+	 * @return - how it differs from the last scan
+	 */
+	int track(String name, long entryFingerprint) {
+		Long previous = entries == null ? null : entries.get(name);
+
+		next.put(name, entryFingerprint);
+
+		if (previous == null) {
+			return ADDED;
+		}
+
+		return previous == entryFingerprint ? UNCHANGED : MODIFIED;
+	}
+
+	/**
+	 * Removes an entry that has gone while applying changes, along with everything under it if it was a directory.
+	 */
+	void remove(String name) {
+		Long previous = next.remove(name);
+
+		if (previous == null) {
+			return;
+		}
+
+		removed.add(name);
+
+		if (previous == DIRECTORY) {
+			String prefix = (name.startsWith("/") ? name.substring(1) : name) + "/";
+
+			for (Iterator<String> names = next.keySet().iterator(); names.hasNext(); ) {
+				String child = names.next();
+
+				if (child.startsWith(prefix)) {
+					names.remove();
+					removed.add(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return - the entry names as of the scan underway
+	 */
+	Set<String> names() {
+		return next.keySet();
+	}
+
+	/**
+	 * Makes the scan that is underway the last scan.
+	 *
+	 * @return - the names that were in the last scan but not this one
+	 */
+	List<String> finish() {
+		if (next == entries) {
+			List<String> changesRemoved = removed;
+
+			next = null;
+			removed = null;
+
+			return changesRemoved;
+		}
+
+		List<String> removed = Collections.emptyList();
+
+		if (entries != null) {
+			for (String name : entries.keySet()) {
+				if (!next.containsKey(name)) {
+					if (removed.isEmpty()) {
+						removed = new ArrayList<>();
+					}
+
+					removed.add(name);
+				}
+			}
+		}
+
+		entries = next;
+		next = null;
+
+		return removed;
+	}
+
+	static long fingerprint(long crc, long size) {
+		return crc * 31 + size;
+	}
+}
@@ -0,0 +1,332 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Holds the tuning options for a ClasspathScanner. The defaults give the original, single threaded behaviour.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ScanConfiguration {
+	private static final Logger log = LoggerFactory.getLogger(ScanConfiguration.class);
+
+	public static final String JAR_ENGINE_PROPERTY = "classpathscanner.jarEngine";
+	public static final String INDEX_DIRECTORY_PROPERTY = "classpathscanner.indexDirectory";
+	public static final String EXTRACTION_DIRECTORY_PROPERTY = "classpathscanner.extractionDirectory";
+
+	private static ForkJoinPool defaultPool;
+
+	/**
+	 * How jar files are read
+	 */
+	public enum JarEngine {
+		JAR_FILE, // java.util.jar.JarFile, the ScanResource has a JarEntry
+		MAPPED    // memory maps the jar and reads its central directory, the ScanResource has no JarEntry
+	}
+
+	/**
+	 * Should classpath resources be processed concurrently
+	 */
+	private boolean parallel;
+
+	/**
+	 * Jars with at least this many entries are split across threads in a parallel scan
+	 */
+	private int splitJarThreshold = 20000;
+
+	/**
+	 * Should listeners be given what has been found on other threads while the scan carries on
+	 */
+	private boolean pipelined;
+
+	/**
+	 * How many batches each stage of a pipelined scan can have waiting
+	 */
+	private int pipelineDepth = 4;
+
+	/**
+	 * The executor used for parallel scans, null means the shared fork-join pool
+	 */
+	private Executor executor;
+
+	/**
+	 * How jars are read, the system property allows us to switch without code changes
+	 */
+	private JarEngine jarEngine = defaultJarEngine();
+
+	/**
+	 * The persistent jar index, null if there isn't one
+	 */
+	private ScanIndex scanIndex = defaultScanIndex();
+
+	/**
+	 * Should each classpath build an annotation index as it is scanned
+	 */
+	private boolean indexAnnotations;
+
+	/**
+	 * Should each classpath build a class hierarchy index as it is scanned
+	 */
+	private boolean indexHierarchy;
+
+	/**
+	 * Should the classpaths of parent class loaders be scanned too
+	 */
+	private boolean scanParents;
+
+	/**
+	 * Should jars inside jars (e.g. WEB-INF/lib in a war) be scanned
+	 */
+	private boolean scanNestedJars;
+
+	/**
+	 * Where compressed nested jars are inflated to, null if they are streamed instead
+	 */
+	private ExtractionCache extractionCache = defaultExtractionCache();
+
+	/**
+	 * How many directory listings can be in flight at once when directories are listed concurrently, 0 lists them one
+	 * at a time on the scanning thread
+	 */
+	private int directoryIoPermits;
+
+	/**
+	 * Should directories on the classpath be watched for changes
+	 */
+	private boolean watchDirectories;
+
+	/**
+	 * How long (ms) a watched directory has to be quiet after a change before it is rescanned
+	 */
+	private long watchQuietPeriod = 200;
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * @return - the executor to use for parallel work, the shared fork-join pool if none has been set
+	 */
+	public Executor getExecutor() {
+		return executor == null ? defaultPool() : executor;
+	}
+
+	/**
+	 * Allows containers that own their own thread pools to use them for scanning.
+	 *
+	 * @param executor - the executor to use, or null to return to the shared fork-join pool
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public int getSplitJarThreshold() {
+		return splitJarThreshold;
+	}
+
+	/**
+	 * In a parallel scan, the listing of a jar with this many entries or more (e.g. a shaded uber-jar) is split into a
+	 * range per processor, each filtered and delivered on its own thread.
+	 */
+	public void setSplitJarThreshold(int splitJarThreshold) {
+		this.splitJarThreshold = splitJarThreshold;
+	}
+
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * Finds resources, asks the listeners about them and reads their content on different threads, the last two from the
+	 * executor, so a listener doing slow work on one batch doesn't stop the next being found. A listener may be asked
+	 * about a batch before it has been given everything it wanted from the one before, but a listener that isn't
+	 * concurrent is still only called by one thread at a time.
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	public int getPipelineDepth() {
+		return pipelineDepth;
+	}
+
+	/**
+	 * @param pipelineDepth - how many batches can be waiting for each stage of a pipelined scan before the scan waits
+	 */
+	public void setPipelineDepth(int pipelineDepth) {
+		this.pipelineDepth = pipelineDepth;
+	}
+
+	public JarEngine getJarEngine() {
+		return jarEngine;
+	}
+
+	public void setJarEngine(JarEngine jarEngine) {
+		this.jarEngine = jarEngine;
+	}
+
+	public ScanIndex getScanIndex() {
+		return scanIndex;
+	}
+
+	/**
+	 * Keeps an index of jar listings in this directory so unchanged jars are not read again after a restart. The index
+	 * holds central directories, so it is only used by the MAPPED jar engine.
+	 *
+	 * @param indexDirectory - where to keep the index, null to turn it off
+	 */
+	public void setIndexDirectory(File indexDirectory) {
+		this.scanIndex = indexDirectory == null ? null : new ScanIndex(indexDirectory);
+	}
+
+	public boolean isIndexAnnotations() {
+		return indexAnnotations;
+	}
+
+	/**
+	 * Parses every class on a classpath the first time it is scanned and indexes their annotations, see
+	 * ClasspathScanner.getAnnotationIndex. Must be set before the scan.
+	 */
+	public void setIndexAnnotations(boolean indexAnnotations) {
+		this.indexAnnotations = indexAnnotations;
+	}
+
+	public boolean isIndexHierarchy() {
+		return indexHierarchy;
+	}
+
+	/**
+	 * Parses every class on a classpath the first time it is scanned and records the superclass and interfaces of each,
+	 * see ClasspathScanner.getHierarchyIndex. Must be set before the scan.
+	 */
+	public void setIndexHierarchy(boolean indexHierarchy) {
+		this.indexHierarchy = indexHierarchy;
+	}
+
+	public boolean isScanParents() {
+		return scanParents;
+	}
+
+	/**
+	 * Scans the whole delegation chain of a class loader. Each parent URLClassLoader's classpath is worked out once and
+	 * shared by all of its children, which only add the resources their parents don't have. A parent is only scanned for a
+	 * child when it has listeners it hasn't told yet. Must be set before the scan.
+	 */
+	public void setScanParents(boolean scanParents) {
+		this.scanParents = scanParents;
+	}
+
+	public boolean isScanNestedJars() {
+		return scanNestedJars;
+	}
+
+	/**
+	 * Looks inside the jars that are inside scanned jars, e.g. WEB-INF/lib/*.jar in a war or BOOT-INF/lib/*.jar in a
+	 * Spring Boot jar, without extracting them. Their resources are offered to the listeners of the offset they are in.
+	 */
+	public void setScanNestedJars(boolean scanNestedJars) {
+		this.scanNestedJars = scanNestedJars;
+	}
+
+	public ExtractionCache getExtractionCache() {
+		return extractionCache;
+	}
+
+	/**
+	 * Inflates compressed nested jars into this directory the first time they are seen, so they are mapped like any other
+	 * jar rather than streamed on every scan. See ExtractionCache for how big it is allowed to get.
+	 *
+	 * @param extractionDirectory - where to inflate them, null to stream them instead
+	 */
+	public void setExtractionDirectory(File extractionDirectory) {
+		this.extractionCache = extractionDirectory == null ? null : new ExtractionCache(extractionDirectory);
+	}
+
+	public int getDirectoryIoPermits() {
+		return directoryIoPermits;
+	}
+
+	/**
+	 * For directories on slow or network mounted file systems, where each listing and stat blocks for a while. The
+	 * directories are listed on virtual threads (platform threads before Java 21) with this many in flight at once, so
+	 * the waits overlap. A few hundred is reasonable for NFS.
+	 *
+	 * @param directoryIoPermits - the most directory listings at once, 0 to list them one at a time
+	 */
+	public void setDirectoryIoPermits(int directoryIoPermits) {
+		this.directoryIoPermits = directoryIoPermits;
+	}
+
+	public boolean isWatchDirectories() {
+		return watchDirectories;
+	}
+
+	/**
+	 * Watches the directories on a classpath (e.g. target/classes) once it has been scanned. Each burst of changes causes
+	 * one rescan of just that directory, which only looks at the files that changed, so REPEAT listeners hear about
+	 * changes as they happen. Must be set before the scan.
+	 */
+	public void setWatchDirectories(boolean watchDirectories) {
+		this.watchDirectories = watchDirectories;
+	}
+
+	public long getWatchQuietPeriod() {
+		return watchQuietPeriod;
+	}
+
+	/**
+	 * @param watchQuietPeriod - how long in milliseconds a watched directory has to be quiet before it is rescanned
+	 */
+	public void setWatchQuietPeriod(long watchQuietPeriod) {
+		this.watchQuietPeriod = watchQuietPeriod;
+	}
+
+	private static ScanIndex defaultScanIndex() {
+		String directory = System.getProperty(INDEX_DIRECTORY_PROPERTY);
+
+		return directory == null ? null : new ScanIndex(new File(directory));
+	}
+
+	private static ExtractionCache defaultExtractionCache() {
+		String directory = System.getProperty(EXTRACTION_DIRECTORY_PROPERTY);
+
+		return directory == null ? null : new ExtractionCache(new File(directory));
+	}
+
+	/**
+	 * A typo in the property mustn't stop the scanner being created, so it is reported and ignored.
+	 */
+	static JarEngine defaultJarEngine() {
+		String engine = System.getProperty(JAR_ENGINE_PROPERTY);
+
+		if (engine == null) {
+			return JarEngine.JAR_FILE;
+		}
+
+		try {
+			return JarEngine.valueOf(engine.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			log.warn("classpath scan: unknown {} '{}', using {}", JAR_ENGINE_PROPERTY, engine, JarEngine.JAR_FILE);
+
+			return JarEngine.JAR_FILE;
+		}
+	}
+
+	private static synchronized ForkJoinPool defaultPool() {
+		if (defaultPool == null) {
+			defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+
+		return defaultPool;
+	}
+}
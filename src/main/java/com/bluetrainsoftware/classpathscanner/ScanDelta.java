@@ -0,0 +1,33 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.net.URL;
+import java.util.List;
+
+/**
+ * What changed in a classpath resource between two scans, as delivered to an IncrementalResourceScanListener.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ScanDelta {
+	/**
+	 * The URL of the directory, jar or offset within the jar
+	 */
+	public final URL url;
+	public final List<ResourceScanListener.ScanResource> added;
+	public final List<ResourceScanListener.ScanResource> modified;
+	/**
+	 * Resources that have gone, they have no JarEntry and their File (if any) no longer exists
+	 */
+	public final List<ResourceScanListener.ScanResource> removed;
+
+	public ScanDelta(URL url, List<ResourceScanListener.ScanResource> added, List<ResourceScanListener.ScanResource> modified, List<ResourceScanListener.ScanResource> removed) {
+		this.url = url;
+		this.added = added;
+		this.modified = modified;
+		this.removed = removed;
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+	}
+}
@@ -0,0 +1,275 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent, on disk index of the jars we have scanned. For each jar it keeps the raw central directory (names,
+ * sizes and local header offsets) along with the jar's fingerprint, so a jar that has not changed since the last JVM
+ * was started is listed straight from the index and only opened if a listener wants the content of an entry. A summary
+ * of the jar is kept ahead of the directory, so a jar no listener could want isn't even listed.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ScanIndex {
+	private static final Logger log = LoggerFactory.getLogger(ScanIndex.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAGIC = 0x43505349; // CPSI
+	private static final int VERSION = 2;
+	private static final String SUFFIX = ".idx";
+
+	/**
+	 * Where the index files live
+	 */
+	private final File directory;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public ScanIndex(File directory) {
+		this.directory = directory;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return - the number of jars that were listed from the index
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return - the number of jars that were new or had changed and so had to be read
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the central directory of the jar, from the index if the jar is unchanged otherwise by reading the jar and
+	 * updating the index.
+	 *
+	 * @param jar - the jar to list
+	 * @return - the directory, or null if the jar is too large to map
+	 * @throws IOException - if the jar can't be read as a zip file
+	 */
+	ZipCentralDirectory open(File jar) throws IOException {
+		FileFingerprint fingerprint = FileFingerprint.of(jar);
+		File indexFile = indexFile(jar);
+
+		if (fingerprint != null) {
+			ZipCentralDirectory indexed = read(jar, indexFile, fingerprint);
+
+			if (indexed != null) {
+				hits.incrementAndGet();
+
+				return indexed;
+			}
+		}
+
+		misses.incrementAndGet();
+
+		ZipCentralDirectory directory = ZipCentralDirectory.open(jar);
+
+		if (directory != null && fingerprint != null) {
+			write(jar, indexFile, fingerprint, directory);
+		}
+
+		return directory;
+	}
+
+	/**
+	 * Gets the summary of the jar, from the index if the jar is unchanged otherwise by listing the jar and updating
+	 * the index.
+	 *
+	 * @return - the summary, or null if the jar is too large to map
+	 * @throws IOException - if the jar can't be read as a zip file
+	 */
+	JarSummary summary(File jar) throws IOException {
+		FileFingerprint fingerprint = FileFingerprint.of(jar);
+
+		if (fingerprint != null) {
+			RandomAccessFile raf = openIndex(jar, indexFile(jar), fingerprint);
+
+			if (raf != null) {
+				try {
+					// read in one go, RandomAccessFile reads a byte at a time
+					byte[] summary = new byte[raf.readInt()];
+					raf.readFully(summary);
+
+					return JarSummary.read(new DataInputStream(new ByteArrayInputStream(summary)));
+				} catch (IOException e) {
+					log.debug("classpath index: unable to read the summary of {}", jar.getAbsolutePath(), e);
+				} finally {
+					raf.close();
+				}
+			}
+		}
+
+		ZipCentralDirectory directory = open(jar);
+
+		return directory == null ? null : JarSummary.of(directory);
+	}
+
+	/**
+	 * @return - the index file positioned after the header, or null if there isn't one for this version of the jar
+	 */
+	private RandomAccessFile openIndex(File jar, File indexFile, FileFingerprint fingerprint) {
+		if (!indexFile.exists()) {
+			return null;
+		}
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+			boolean current = false;
+
+			try {
+				if (raf.readInt() != MAGIC || raf.readInt() != VERSION || !raf.readUTF().equals(jar.getAbsolutePath())) {
+					return null;
+				}
+
+				FileFingerprint indexed = new FileFingerprint(raf.readLong(), raf.readLong(), raf.readUTF());
+
+				if (!indexed.equals(fingerprint)) {
+					log.debug("classpath index: {} has changed", jar.getAbsolutePath());
+					return null;
+				}
+
+				current = true;
+
+				return raf;
+			} finally {
+				if (!current) {
+					raf.close();
+				}
+			}
+		} catch (IOException e) {
+			log.debug("classpath index: unable to read {}", indexFile.getAbsolutePath(), e);
+
+			return null;
+		}
+	}
+
+	private ZipCentralDirectory read(File jar, File indexFile, FileFingerprint fingerprint) {
+		RandomAccessFile raf = openIndex(jar, indexFile, fingerprint);
+
+		if (raf == null) {
+			return null;
+		}
+
+		try {
+			try {
+				raf.skipBytes(raf.readInt()); // the summary
+
+				long baseOffset = raf.readLong();
+				int length = raf.readInt();
+
+				ByteBuffer cen = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, raf.getFilePointer(), length);
+
+				return new ZipCentralDirectory(jar, cen, baseOffset);
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			log.debug("classpath index: unable to read {}", indexFile.getAbsolutePath(), e);
+
+			return null;
+		}
+	}
+
+	/**
+	 * Writes to a temporary file and renames it so other JVMs sharing the index never see half an entry.
+	 */
+	private void write(File jar, File indexFile, FileFingerprint fingerprint, ZipCentralDirectory centralDirectory) {
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			log.warn("classpath index: unable to create {}", directory.getAbsolutePath());
+			return;
+		}
+
+		try {
+			File temp = File.createTempFile(indexFile.getName(), ".tmp", directory);
+
+			try {
+				FileOutputStream stream = new FileOutputStream(temp);
+
+				try {
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+					ByteBuffer cen = centralDirectory.centralDirectory();
+
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeUTF(jar.getAbsolutePath());
+					out.writeLong(fingerprint.size);
+					out.writeLong(fingerprint.lastModified);
+					out.writeUTF(fingerprint.fileKey);
+
+					ByteArrayOutputStream summary = new ByteArrayOutputStream();
+					JarSummary.of(centralDirectory).write(new DataOutputStream(summary));
+					out.writeInt(summary.size());
+					summary.writeTo(out);
+
+					out.writeLong(centralDirectory.baseOffset());
+					out.writeInt(cen.remaining());
+					out.flush();
+
+					FileChannel channel = stream.getChannel();
+
+					while (cen.hasRemaining()) {
+						channel.write(cen);
+					}
+				} finally {
+					stream.close();
+				}
+
+				if (!temp.renameTo(indexFile)) {
+					indexFile.delete();
+
+					if (!temp.renameTo(indexFile)) {
+						log.debug("classpath index: unable to replace {}", indexFile.getAbsolutePath());
+					}
+				}
+			} finally {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			log.warn("classpath index: unable to write index for {}", jar.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Index files are named after a digest of the jar's path so any path can be indexed.
+	 */
+	private File indexFile(File jar) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(jar.getAbsolutePath().getBytes(UTF8));
+			StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+
+			return new File(directory, name.append(SUFFIX).toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-1 is not available", e);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lets a scan keep finding resources while listeners work through what it has already found. Batches go to an asking
+ * stage, which offers them to the listeners, and what the listeners want goes on to a delivery stage, which reads the
+ * content. Only one thread works on a stage at a time, so each sees work in the order it was handed over, and the
+ * queues between them are bounded, so a slow listener holds the scan up rather than letting the batches pile up.
+ *
+ * The stages run on the configured executor rather than threads of their own, and the scan works through a stage itself
+ * when it would otherwise wait for it, so a busy executor can't leave the scan stuck.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ScanPipeline {
+	/**
+	 * How long to wait for a stage before seeing whether it needs a hand
+	 */
+	private static final long HELP_MILLIS = 10;
+
+	private final Executor executor;
+	private final Stage asking;
+	private final Stage delivering;
+
+	/**
+	 * Work that has been handed to a stage and not finished yet
+	 */
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	private class Stage implements Runnable {
+		private final BlockingQueue<Runnable> queue;
+
+		/**
+		 * Set while a thread is working through the queue
+		 */
+		private final AtomicBoolean draining = new AtomicBoolean();
+
+		Stage(int depth) {
+			queue = new ArrayBlockingQueue<>(depth);
+		}
+
+		void submit(Runnable task) {
+			rethrow();
+
+			outstanding.incrementAndGet();
+
+			try {
+				while (!queue.offer(task, HELP_MILLIS, TimeUnit.MILLISECONDS)) {
+					drain();
+				}
+			} catch (InterruptedException e) {
+				finished();
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted waiting for listeners to catch up", e);
+			}
+
+			if (!draining.get()) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// the scan works through it when it waits for the pipeline
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			drain();
+		}
+
+		/**
+		 * Works through the queue unless another thread already is. The queue is checked again after letting go, as
+		 * work handed over just before then won't have been given a thread of its own.
+		 */
+		void drain() {
+			while (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+				try {
+					Runnable task;
+
+					while ((task = queue.poll()) != null) {
+						try {
+							// once something has failed the rest is just drained so the scan doesn't block
+							if (failure.get() == null) {
+								task.run();
+							}
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						} finally {
+							finished();
+						}
+					}
+				} finally {
+					draining.set(false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param executor - where the stages run
+	 * @param depth - how many pieces of work each stage can have waiting
+	 */
+	ScanPipeline(Executor executor, int depth) {
+		this.executor = executor;
+		asking = new Stage(depth);
+		delivering = new Stage(depth);
+	}
+
+	void ask(Runnable task) {
+		asking.submit(task);
+	}
+
+	void deliver(Runnable task) {
+		delivering.submit(task);
+	}
+
+	private void finished() {
+		if (outstanding.decrementAndGet() == 0) {
+			synchronized (outstanding) {
+				outstanding.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the listeners to have been given everything handed over so far, e.g. before the jar the content comes
+	 * from is closed. The first failure of any stage is rethrown.
+	 */
+	void await() {
+		while (outstanding.get() > 0) {
+			asking.drain();
+			delivering.drain();
+
+			synchronized (outstanding) {
+				if (outstanding.get() > 0) {
+					try {
+						outstanding.wait(HELP_MILLIS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RuntimeException("Interrupted waiting for listeners to catch up", e);
+					}
+				}
+			}
+		}
+
+		rethrow();
+	}
+
+	private void rethrow() {
+		Throwable t = failure.get();
+
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		} else if (t instanceof Error) {
+			throw (Error)t;
+		} else if (t != null) {
+			throw new RuntimeException(t);
+		}
+	}
+}
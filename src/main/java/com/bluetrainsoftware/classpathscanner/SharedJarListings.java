@@ -0,0 +1,191 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+
+/**
+ * The listings of the jars scanned in this JVM, shared by every class loader that has the same jar on its classpath.
+ * Only the MAPPED engine's central directories and the jar summaries are shared, the JAR_FILE engine uses the entries
+ * of its own JarFile.
+ * Jars are identified by their fingerprint rather than their path, so hard linked copies share a listing too, and a jar
+ * that changes simply gets a new one. Listings are softly held so they go if memory gets tight.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class SharedJarListings {
+	static final SharedJarListings shared = new SharedJarListings();
+
+	private final ConcurrentMap<FileFingerprint, SoftReference<ZipCentralDirectory>> directories = new ConcurrentHashMap<>();
+	private final ConcurrentMap<FileFingerprint, SoftReference<JarSummary>> summaries = new ConcurrentHashMap<>();
+
+	/**
+	 * The sorted order of each JarEntry listing that has been asked for one, it goes when the listing does
+	 */
+	private final Map<JarEntry[], int[]> sortedOrders = Collections.synchronizedMap(new WeakHashMap<JarEntry[], int[]>());
+
+	/**
+	 * The last fingerprint seen for each path, so the listings of jars that have changed can be dropped
+	 */
+	private final ConcurrentMap<String, FileFingerprint> latest = new ConcurrentHashMap<>();
+
+	final AtomicLong hits = new AtomicLong();
+	final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * The central directory of the jar for the MAPPED engine.
+	 *
+	 * @param scanIndex - the persistent index to use on a miss, if any
+	 * @return - the directory or null if the jar is too large to map
+	 */
+	ZipCentralDirectory directory(File jar, ScanIndex scanIndex) throws IOException {
+		FileFingerprint key = key(jar);
+		ZipCentralDirectory directory = key == null ? null : get(directories, key);
+
+		if (directory == null) {
+			misses.incrementAndGet();
+
+			directory = scanIndex == null ? ZipCentralDirectory.open(jar) : scanIndex.open(jar);
+
+			if (directory != null && key != null) {
+				directories.put(key, new SoftReference<>(directory));
+			}
+		} else {
+			hits.incrementAndGet();
+		}
+
+		return directory;
+	}
+
+	/**
+	 * The summary of the jar if it can be had without listing the jar just for it: from the index if there is one, a
+	 * central directory we already have, or the one the MAPPED engine is going to scan with anyway. The JAR_FILE engine
+	 * lists the jar itself, so its summaries are only there once a scan has remembered one.
+	 *
+	 * @return - the summary, or null if there isn't one to be had cheaply or the jar can't be listed
+	 */
+	JarSummary summary(File jar, ScanIndex scanIndex, ScanConfiguration.JarEngine engine) throws IOException {
+		FileFingerprint key = key(jar);
+		JarSummary summary = key == null ? null : get(summaries, key);
+
+		if (summary != null) {
+			return summary;
+		}
+
+		// a listing we already have isn't counted as a hit, the scan will count it if it goes on to use it
+		ZipCentralDirectory directory = key == null ? null : get(directories, key);
+
+		if (directory != null) {
+			summary = JarSummary.of(directory);
+		} else if (scanIndex != null) {
+			summary = scanIndex.summary(jar);
+		} else if (engine == ScanConfiguration.JarEngine.MAPPED) {
+			directory = directory(jar, null);
+			summary = directory == null ? null : JarSummary.of(directory);
+		}
+
+		if (summary != null && key != null) {
+			summaries.put(key, new SoftReference<>(summary));
+		}
+
+		return summary;
+	}
+
+	/**
+	 * Keeps a summary of a jar the JAR_FILE engine has just listed, so later scans can rule it out without listing it.
+	 */
+	void remember(File jar, JarEntry[] entries) {
+		FileFingerprint key = key(jar);
+
+		if (key != null && get(summaries, key) == null) {
+			String[] names = new String[entries.length];
+
+			for (int count = 0; count < names.length; count++) {
+				names[count] = entries[count].getName();
+			}
+
+			summaries.put(key, new SoftReference<>(JarSummary.of(names)));
+		}
+	}
+
+	/**
+	 * The entries in order of their names, so the names starting with any given prefix are next to each other.
+	 */
+	int[] sortedOrder(final JarEntry[] listing) {
+		int[] order = sortedOrders.get(listing);
+
+		if (order == null) {
+			Integer[] boxed = new Integer[listing.length];
+
+			for (int count = 0; count < boxed.length; count++) {
+				boxed[count] = count;
+			}
+
+			Arrays.sort(boxed, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return listing[o1].getName().compareTo(listing[o2].getName());
+				}
+			});
+
+			order = new int[boxed.length];
+
+			for (int count = 0; count < order.length; count++) {
+				order[count] = boxed[count];
+			}
+
+			sortedOrders.put(listing, order);
+		}
+
+		return order;
+	}
+
+	private static <T> T get(ConcurrentMap<FileFingerprint, SoftReference<T>> listings, FileFingerprint key) {
+		SoftReference<T> reference = listings.get(key);
+		T listing = reference == null ? null : reference.get();
+
+		if (reference != null && listing == null) {
+			listings.remove(key, reference);
+		}
+
+		return listing;
+	}
+
+	/**
+	 * Without a file key (e.g. on Windows) two different jars could have the same size and time, so the path is used
+	 * instead and only the same path is shared.
+	 *
+	 * @return - the key for the jar's listings, or null if it can't be read
+	 */
+	private FileFingerprint key(File jar) {
+		FileFingerprint fingerprint = FileFingerprint.of(jar);
+
+		if (fingerprint == null) {
+			return null;
+		}
+
+		String path = jar.getAbsolutePath();
+
+		if (fingerprint.fileKey.isEmpty()) {
+			fingerprint = new FileFingerprint(fingerprint.size, fingerprint.lastModified, path);
+		}
+
+		FileFingerprint previous = latest.put(path, fingerprint);
+
+		if (previous != null && !previous.equals(fingerprint)) {
+			directories.remove(previous);
+			summaries.remove(previous);
+		}
+
+		return fingerprint;
+	}
+}
@@ -0,0 +1,563 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a memory mapped jar directly. Unlike JarFile it does not build its own entry tables,
+ * verify signatures or create an entry object per entry - entries are addressed by their index and their names are
+ * only decoded when asked for.
+ *
+ * Instances are immutable once opened and can be shared between threads.
+ *
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+class ZipCentralDirectory {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int LOC_SIG = 0x04034b50;
+	private static final int CEN_SIG = 0x02014b50;
+	private static final int END_SIG = 0x06054b50;
+	private static final int ZIP64_END_SIG = 0x06064b50;
+	private static final int ZIP64_LOC_SIG = 0x07064b50;
+
+	private static final int LOC_HEADER = 30;
+	private static final int CEN_HEADER = 46;
+	private static final int END_HEADER = 22;
+	private static final int ZIP64_LOC_HEADER = 20;
+	private static final int ZIP64_EXTRA = 0x0001;
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	static final int STORED = 0;
+	static final int DEFLATED = 8;
+
+	/**
+	 * The jar file, used for error messages
+	 */
+	final File file;
+
+	/**
+	 * The whole archive, only mapped when content is asked for if the directory came from the index
+	 */
+	private volatile ByteBuffer data;
+
+	/**
+	 * Just the central directory
+	 */
+	private final ByteBuffer cen;
+
+	/**
+	 * The position of each entry's header in the central directory
+	 */
+	private final int[] positions;
+
+	/**
+	 * Jars with something prepended (e.g. a launch script) have all of their offsets out by this amount
+	 */
+	private final long baseOffset;
+
+	/**
+	 * The entries sorted by name, only if someone has asked for it
+	 */
+	private volatile int[] sortedOrder;
+
+	/**
+	 * Maps the file and reads its central directory.
+	 *
+	 * @param file - the jar to map
+	 * @return - the directory or null if the file is too big to map in one go
+	 * @throws IOException - if the file isn't a zip file
+	 */
+	static ZipCentralDirectory open(File file) throws IOException {
+		ByteBuffer archive = map(file);
+
+		return archive == null ? null : new ZipCentralDirectory(file, archive);
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel channel = raf.getChannel();
+
+			if (channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+
+			// the mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+	}
+
+	ZipCentralDirectory(File file, ByteBuffer archive) throws IOException {
+		this.file = file;
+		this.data = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+		int end = findEnd();
+
+		long cenSize = u32(data, end + 12);
+		long cenOffset = u32(data, end + 16);
+		long cenPos = end - cenSize;
+
+		int zip64Locator = end - ZIP64_LOC_HEADER;
+
+		if (zip64Locator >= 0 && data.getInt(zip64Locator) == ZIP64_LOC_SIG) {
+			long zip64End = findZip64End(zip64Locator);
+
+			cenSize = data.getLong((int)zip64End + 40);
+			cenOffset = data.getLong((int)zip64End + 48);
+			cenPos = zip64End - cenSize;
+		}
+
+		if (cenPos < 0 || cenSize > Integer.MAX_VALUE) {
+			throw new ZipException("Invalid central directory in " + file.getAbsolutePath());
+		}
+
+		baseOffset = cenPos - cenOffset;
+		cen = slice(data, (int)cenPos, (int)cenSize);
+		positions = readPositions();
+	}
+
+	/**
+	 * Uses a central directory that has already been read (e.g. from the scan index), the jar itself is only mapped if
+	 * the content of an entry is asked for.
+	 *
+	 * @param file - the jar the directory belongs to
+	 * @param centralDirectory - the raw central directory
+	 * @param baseOffset - the offset correction for the local headers
+	 */
+	ZipCentralDirectory(File file, ByteBuffer centralDirectory, long baseOffset) throws IOException {
+		this.file = file;
+		this.baseOffset = baseOffset;
+		this.cen = centralDirectory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.positions = readPositions();
+	}
+
+	/**
+	 * @return - a read only copy of the raw central directory
+	 */
+	ByteBuffer centralDirectory() {
+		return cen.asReadOnlyBuffer();
+	}
+
+	long baseOffset() {
+		return baseOffset;
+	}
+
+	/**
+	 * @return - the number of entries in the jar
+	 */
+	int size() {
+		return positions.length;
+	}
+
+	int nameLength(int index) {
+		return u16(cen, positions[index] + 28);
+	}
+
+	/**
+	 * @return - the full name of the entry
+	 */
+	String name(int index) {
+		return name(index, 0, false);
+	}
+
+	/**
+	 * Decodes part of the name of an entry.
+	 *
+	 * @param index - the entry
+	 * @param strip - the number of leading bytes to ignore (e.g. a jar offset)
+	 * @param trimSlash - drop a trailing / as directory entries have them
+	 * @return the decoded name
+	 */
+	String name(int index, int strip, boolean trimSlash) {
+		int pos = positions[index];
+		int start = pos + CEN_HEADER + strip;
+		int len = u16(cen, pos + 28) - strip;
+
+		if (trimSlash && len > 0 && cen.get(start + len - 1) == '/') {
+			len--;
+		}
+
+		if (len <= 0) {
+			return "";
+		}
+
+		char[] chars = new char[len];
+
+		for (int count = 0; count < len; count++) {
+			byte b = cen.get(start + count);
+
+			if (b < 0) {
+				byte[] bytes = new byte[len];
+
+				for (int copy = 0; copy < len; copy++) {
+					bytes[copy] = cen.get(start + copy);
+				}
+
+				return new String(bytes, UTF8);
+			}
+
+			chars[count] = (char)b;
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Compares the raw name bytes against a prefix without decoding the name, a word at a time.
+	 */
+	boolean nameStartsWith(int index, ByteLiteral prefix) {
+		int pos = positions[index];
+
+		return u16(cen, pos + 28) >= prefix.length() && prefix.at(cen, pos + CEN_HEADER);
+	}
+
+	/**
+	 * The entries in order of their raw names, worked out the first time it is asked for. The names starting with any
+	 * given prefix are next to each other in it.
+	 */
+	int[] sortedOrder() {
+		int[] order = sortedOrder;
+
+		if (order == null) {
+			Integer[] boxed = new Integer[positions.length];
+
+			for (int count = 0; count < boxed.length; count++) {
+				boxed[count] = count;
+			}
+
+			Arrays.sort(boxed, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return compareName(o1, positions[o2] + CEN_HEADER, u16(cen, positions[o2] + 28), cen);
+				}
+			});
+
+			order = new int[boxed.length];
+
+			for (int count = 0; count < order.length; count++) {
+				order[count] = boxed[count];
+			}
+
+			sortedOrder = order;
+		}
+
+		return order;
+	}
+
+	/**
+	 * @return - the first place in the sorted order whose name is not less than the prefix
+	 */
+	int lowerBound(int[] order, byte[] prefix) {
+		ByteBuffer wrapped = ByteBuffer.wrap(prefix);
+		int low = 0;
+		int high = order.length;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (compareName(order[middle], 0, prefix.length, wrapped) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Compares the entry's raw name with some other bytes, as unsigned bytes.
+	 */
+	private int compareName(int index, int start, int length, ByteBuffer other) {
+		int pos = positions[index] + CEN_HEADER;
+		int nameLength = u16(cen, positions[index] + 28);
+
+		for (int count = 0, common = Math.min(nameLength, length); count < common; count++) {
+			int difference = (cen.get(pos + count) & 0xff) - (other.get(start + count) & 0xff);
+
+			if (difference != 0) {
+				return difference;
+			}
+		}
+
+		return nameLength - length;
+	}
+
+	/**
+	 * Points the reusable name at the raw bytes of this entry's name.
+	 */
+	RawName rawName(int index, RawName name) {
+		int pos = positions[index];
+
+		return name.set(cen, pos + CEN_HEADER, u16(cen, pos + 28));
+	}
+
+	boolean isDirectory(int index) {
+		int len = nameLength(index);
+
+		return len > 0 && cen.get(positions[index] + CEN_HEADER + len - 1) == '/';
+	}
+
+	int method(int index) {
+		return u16(cen, positions[index] + 10);
+	}
+
+	long crc(int index) {
+		return u32(cen, positions[index] + 16);
+	}
+
+	long compressedSize(int index) {
+		long size = u32(cen, positions[index] + 20);
+
+		if (size == ZIP64_MAGIC) {
+			size = zip64Value(index, 1);
+		}
+
+		return size;
+	}
+
+	long size(int index) {
+		long size = u32(cen, positions[index] + 24);
+
+		if (size == ZIP64_MAGIC) {
+			size = zip64Value(index, 0);
+		}
+
+		return size;
+	}
+
+	long localHeaderOffset(int index) {
+		long offset = u32(cen, positions[index] + 42);
+
+		if (offset == ZIP64_MAGIC) {
+			offset = zip64Value(index, 2);
+		}
+
+		return offset + baseOffset;
+	}
+
+	/**
+	 * Opens the contents of an entry. Stored entries come straight out of the mapping.
+	 *
+	 * @param index - the entry
+	 * @return - the uncompressed data stream
+	 * @throws IOException - if the entry is corrupt or uses an unsupported compression method
+	 */
+	InputStream openStream(int index) throws IOException {
+		ByteBuffer content = rawContent(index);
+
+		int method = method(index);
+
+		if (method == STORED) {
+			return new ByteBufferInputStream(content);
+		} else if (method == DEFLATED) {
+			return new EntryInflaterInputStream(new ByteBufferInputStream(content));
+		} else {
+			throw new ZipException("Unsupported compression method " + method + " for " + name(index) + " in " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @return - the (possibly compressed) bytes of the entry, straight out of the mapping
+	 */
+	ByteBuffer rawContent(int index) throws IOException {
+		ByteBuffer data = archive();
+		long local = localHeaderOffset(index);
+
+		if (local < 0 || local + LOC_HEADER > data.limit() || data.getInt((int)local) != LOC_SIG) {
+			throw new ZipException("Invalid local header for " + name(index) + " in " + file.getAbsolutePath());
+		}
+
+		long start = local + LOC_HEADER + u16(data, (int)local + 26) + u16(data, (int)local + 28);
+		long length = compressedSize(index);
+
+		if (start + length > data.limit()) {
+			throw new EOFException("Entry " + name(index) + " runs past the end of " + file.getAbsolutePath());
+		}
+
+		return slice(data, (int)start, (int)length);
+	}
+
+	private ByteBuffer archive() throws IOException {
+		ByteBuffer archive = data;
+
+		if (archive == null) {
+			synchronized (this) {
+				if (data == null) {
+					ByteBuffer mapped = map(file);
+
+					if (mapped == null) {
+						throw new ZipException(file.getAbsolutePath() + " has grown too large to map");
+					}
+
+					data = mapped.order(ByteOrder.LITTLE_ENDIAN);
+				}
+
+				archive = data;
+			}
+		}
+
+		return archive;
+	}
+
+	private int findEnd() throws IOException {
+		int last = data.limit() - END_HEADER;
+		int stop = Math.max(0, last - 0xFFFF);
+
+		for (int pos = last; pos >= stop; pos--) {
+			if (data.getInt(pos) == END_SIG && pos + END_HEADER + u16(data, pos + 20) <= data.limit()) {
+				return pos;
+			}
+		}
+
+		throw new ZipException("No end of central directory in " + file.getAbsolutePath());
+	}
+
+	private long findZip64End(int locator) throws IOException {
+		long recorded = data.getLong(locator + 8);
+
+		// the record normally sits just in front of the locator, which still works when the offsets are out
+		long expected = locator - 56;
+
+		for (long pos : new long[] {recorded, expected}) {
+			if (pos >= 0 && pos + 56 <= data.limit() && data.getInt((int)pos) == ZIP64_END_SIG) {
+				return pos;
+			}
+		}
+
+		throw new ZipException("Invalid zip64 end of central directory in " + file.getAbsolutePath());
+	}
+
+	private int[] readPositions() throws IOException {
+		int[] found = new int[256];
+		int count = 0;
+		int pos = 0;
+		int limit = cen.limit();
+
+		while (pos + CEN_HEADER <= limit) {
+			if (cen.getInt(pos) != CEN_SIG) {
+				throw new ZipException("Invalid central directory header in " + file.getAbsolutePath());
+			}
+
+			if (count == found.length) {
+				int[] grown = new int[found.length * 2];
+				System.arraycopy(found, 0, grown, 0, count);
+				found = grown;
+			}
+
+			found[count++] = pos;
+
+			pos += CEN_HEADER + u16(cen, pos + 28) + u16(cen, pos + 30) + u16(cen, pos + 32);
+		}
+
+		int[] result = new int[count];
+		System.arraycopy(found, 0, result, 0, count);
+
+		return result;
+	}
+
+	/**
+	 * Zip64 extra fields only contain the values that overflowed, in the order size, compressed size, offset.
+	 */
+	private long zip64Value(int index, int wanted) {
+		int pos = positions[index];
+		int extra = pos + CEN_HEADER + u16(cen, pos + 28);
+		int extraEnd = extra + u16(cen, pos + 30);
+
+		boolean[] present = new boolean[] {
+			u32(cen, pos + 24) == ZIP64_MAGIC, u32(cen, pos + 20) == ZIP64_MAGIC, u32(cen, pos + 42) == ZIP64_MAGIC
+		};
+
+		while (extra + 4 <= extraEnd) {
+			int id = u16(cen, extra);
+			int len = u16(cen, extra + 2);
+
+			if (id == ZIP64_EXTRA) {
+				int field = extra + 4;
+
+				for (int count = 0; count < wanted; count++) {
+					if (present[count]) {
+						field += 8;
+					}
+				}
+
+				if (field + 8 <= extra + 4 + len) {
+					return cen.getLong(field);
+				}
+
+				break;
+			}
+
+			extra += 4 + len;
+		}
+
+		return ZIP64_MAGIC;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int start, int length) {
+		ByteBuffer copy = buffer.duplicate();
+
+		copy.limit(start + length);
+		copy.position(start);
+
+		return copy.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int u16(ByteBuffer buffer, int pos) {
+		return buffer.getShort(pos) & 0xffff;
+	}
+
+	private static long u32(ByteBuffer buffer, int pos) {
+		return buffer.getInt(pos) & 0xffffffffL;
+	}
+
+	/**
+	 * Zip entries are raw deflate streams, the inflater needs an extra dummy byte at the end to be sure it is done.
+	 */
+	private static class EntryInflaterInputStream extends InflaterInputStream {
+		private boolean eof;
+
+		EntryInflaterInputStream(InputStream in) {
+			super(in, new Inflater(true), 8192);
+		}
+
+		@Override
+		protected void fill() throws IOException {
+			if (eof) {
+				throw new EOFException("Unexpected end of deflated entry");
+			}
+
+			len = in.read(buf, 0, buf.length);
+
+			if (len == -1) {
+				buf[0] = 0;
+				len = 1;
+				eof = true;
+			}
+
+			inf.setInput(buf, 0, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			inf.end();
+			super.close();
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.io.Serializable;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+@ScannedMarker(value = {"one", "two"}, type = java.lang.annotation.ElementType.FIELD)
+@Deprecated
+public abstract class AnnotatedJarClass extends SimpleJarClass implements Runnable, Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final double RATIO = 1.5;
+	private static final String NAME = "annotated";
+
+	@Deprecated
+	protected String field;
+
+	@ScannedMarker("method")
+	public abstract void annotatedMethod();
+}
@@ -0,0 +1,108 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ClassFileParserTests {
+	private ClassFileInfo parse(Class<?> clazz) throws IOException {
+		InputStream stream = getClass().getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class");
+
+		try {
+			return ClassFileParser.forThread().parse(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Test
+	public void readsStructure() throws IOException {
+		ClassFileInfo info = parse(AnnotatedJarClass.class);
+
+		assertEquals(AnnotatedJarClass.class.getName(), info.className);
+		assertEquals(SimpleJarClass.class.getName(), info.superclassName);
+		assertEquals(2, info.interfaceNames.size());
+		assertEquals(Runnable.class.getName(), info.interfaceNames.get(0));
+		assertTrue(info.isAbstract());
+		assertTrue(info.annotations.contains(ScannedMarker.class.getName()));
+		assertTrue(info.annotations.contains(Deprecated.class.getName()));
+
+		assertTrue(parse(ScannedMarker.class).isAnnotation());
+		assertNull(parse(Object.class).superclassName);
+	}
+
+	class ClassCollector implements ClassScanListener, ConcurrentResourceScanListener {
+		final Map<String, ClassFileInfo> classes = new HashMap<>();
+		int streams;
+
+		@Override
+		public void deliverClass(ScanResource desire, ClassFileInfo classInfo) {
+			classes.put(classInfo.className, classInfo);
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			List<ScanResource> wanted = new ArrayList<>();
+
+			for(ScanResource resource : scanResources) {
+				if (resource.isClass()) {
+					wanted.add(resource);
+				}
+			}
+
+			return wanted;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+			streams ++;
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.ONCE;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	@Test
+	public void classesAreParsedOnce() throws Exception {
+		ClasspathScanner.resetScannerForTesting();
+
+		File classes = new File(SimpleJarClass.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+		ClasspathScanner cp = new ClasspathScanner();
+		ClassCollector first = new ClassCollector();
+		ClassCollector second = new ClassCollector();
+
+		cp.registerResourceScanner(first);
+		cp.registerResourceScanner(second);
+
+		cp.scan(new URLClassLoader(new URL[] {classes.toURI().toURL()}));
+
+		ClassFileInfo annotated = first.classes.get(AnnotatedJarClass.class.getName());
+
+		assertTrue(annotated.annotations.contains(ScannedMarker.class.getName()));
+		assertSame(annotated, second.classes.get(AnnotatedJarClass.class.getName()));
+		assertEquals(0, first.streams);
+	}
+}
@@ -0,0 +1,143 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ClassIndexTests {
+	private ClasspathScanner scanTestClasses(URLClassLoader loader) throws Exception {
+		ClasspathScanner.resetScannerForTesting();
+
+		ClasspathScanner cp = new ClasspathScanner();
+		cp.getConfiguration().setIndexAnnotations(true);
+		cp.getConfiguration().setIndexHierarchy(true);
+
+		cp.scan(loader);
+
+		return cp;
+	}
+
+	private URLClassLoader testClassesLoader() throws Exception {
+		File classes = new File(SimpleJarClass.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+		return new URLClassLoader(new URL[] {classes.toURI().toURL()});
+	}
+
+	@Test
+	public void annotationIndex() throws Exception {
+		URLClassLoader loader = testClassesLoader();
+		AnnotationIndex index = scanTestClasses(loader).getAnnotationIndex(loader);
+
+		assertEquals(1, index.getClassesAnnotatedWith(ScannedMarker.class.getName()).size());
+		assertTrue(index.getClassesAnnotatedWith(ScannedMarker.class.getName()).contains(AnnotatedJarClass.class.getName()));
+		assertTrue(index.getClassesWithMembersAnnotatedWith(Deprecated.class.getName()).contains(AnnotatedJarClass.class.getName()));
+		assertTrue(index.isAnnotatedWith(AnnotatedJarClass.class.getName(), Deprecated.class.getName()));
+		assertFalse(index.isAnnotatedWith(SimpleJarClass.class.getName(), Deprecated.class.getName()));
+		assertTrue(index.getClassesAnnotatedWith("org.nothing.Here").isEmpty());
+	}
+
+	@Test
+	public void hierarchyIndex() throws Exception {
+		URLClassLoader loader = testClassesLoader();
+		ClassHierarchyIndex index = scanTestClasses(loader).getHierarchyIndex(loader);
+
+		List<String> subclasses = index.getSubclasses(SimpleJarClass.class.getName());
+		assertEquals(2, subclasses.size());
+		assertTrue(subclasses.contains(ConcreteJarClass.class.getName()));
+
+		List<String> runnables = index.getImplementors(Runnable.class.getName());
+		assertTrue(runnables.contains(AnnotatedJarClass.class.getName()));
+		assertTrue(runnables.contains(ConcreteJarClass.class.getName()));
+
+		assertTrue(index.getImplementors(Annotation.class.getName()).isEmpty());
+		assertTrue(index.getSubclasses(Runnable.class.getName()).isEmpty());
+		assertEquals(1, index.getSubclasses(AnnotatedJarClass.class.getName()).size());
+		assertTrue(index.getSubtypes(Annotation.class.getName()).contains(ScannedMarker.class.getName()));
+		assertTrue(index.isSubtypeOf(ConcreteJarClass.class.getName(), Serializable.class.getName()));
+		assertFalse(index.isSubtypeOf(SimpleJarClass.class.getName(), Serializable.class.getName()));
+		assertTrue(index.getSubclasses("org.nothing.Here").isEmpty());
+	}
+
+	@Test
+	public void noIndexUnlessAsked() throws Exception {
+		ClasspathScanner.resetScannerForTesting();
+
+		URLClassLoader loader = testClassesLoader();
+		ClasspathScanner cp = new ClasspathScanner();
+		cp.scan(loader);
+
+		assertNull(cp.getAnnotationIndex(loader));
+		assertNull(cp.getHierarchyIndex(loader));
+	}
+
+	private URL jarOf(Class... clazzes) throws IOException {
+		File jar = File.createTempFile("indexed", ".jar");
+		jar.deleteOnExit();
+
+		JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jar));
+
+		for(Class clazz : clazzes) {
+			String clazzPath = clazz.getName().replace(".", "/") + ".class";
+
+			jarOutputStream.putNextEntry(new JarEntry(clazzPath));
+			IOUtils.copy(getClass().getResourceAsStream("/" + clazzPath), jarOutputStream);
+		}
+
+		jarOutputStream.close();
+
+		return jar.toURI().toURL();
+	}
+
+	@Test
+	public void childIndexesIncludeTheParents() throws Exception {
+		ClasspathScanner.resetScannerForTesting();
+
+		ClasspathScanner cp = new ClasspathScanner();
+		cp.getConfiguration().setIndexAnnotations(true);
+		cp.getConfiguration().setIndexHierarchy(true);
+		cp.getConfiguration().setScanParents(true);
+
+		URLClassLoader parent = new URLClassLoader(new URL[] {jarOf(SimpleJarClass.class, AnnotatedJarClass.class)}, null);
+		URLClassLoader child = new URLClassLoader(new URL[] {jarOf(ConcreteJarClass.class)}, parent);
+
+		cp.scan(child);
+
+		AnnotationIndex annotations = cp.getAnnotationIndex(child);
+
+		assertEquals("[" + AnnotatedJarClass.class.getName() + "]", annotations.getClassesAnnotatedWith(ScannedMarker.class.getName()).toString());
+		assertTrue(annotations.isAnnotatedWith(AnnotatedJarClass.class.getName(), Deprecated.class.getName()));
+
+		ClassHierarchyIndex hierarchy = cp.getHierarchyIndex(child);
+
+		// the child's class extends the parent's, which extends the parent's
+		List<String> subclasses = hierarchy.getSubclasses(SimpleJarClass.class.getName());
+		assertEquals(2, subclasses.size());
+		assertTrue(subclasses.contains(AnnotatedJarClass.class.getName()));
+		assertTrue(subclasses.contains(ConcreteJarClass.class.getName()));
+
+		assertTrue(hierarchy.getImplementors(Runnable.class.getName()).contains(ConcreteJarClass.class.getName()));
+		assertTrue(hierarchy.isSubtypeOf(ConcreteJarClass.class.getName(), Serializable.class.getName()));
+		assertEquals(3, hierarchy.getScannedClassCount());
+
+		// the parent's own index knows nothing of the child
+		assertEquals(1, cp.getHierarchyIndex(parent).getSubclasses(SimpleJarClass.class.getName()).size());
+	}
+}
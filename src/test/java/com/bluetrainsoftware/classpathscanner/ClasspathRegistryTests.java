@@ -0,0 +1,230 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ClasspathRegistryTests {
+	private ClasspathScanner.Classpath classpath() {
+		return new ClasspathScanner().new Classpath(new ArrayList<ClasspathResource>());
+	}
+
+	@Test
+	public void releasedAndEvicted() {
+		ClasspathRegistry registry = new ClasspathRegistry();
+		registry.setMaxRetained(2);
+
+		ClassLoader first = new URLClassLoader(new URL[0], null);
+		ClassLoader second = new URLClassLoader(new URL[0], null);
+		ClassLoader third = new URLClassLoader(new URL[0], null);
+
+		registry.put(first, classpath());
+		registry.put(second, classpath());
+
+		assertNotNull(registry.get(first)); // second is now the least recently used
+
+		registry.put(third, classpath());
+
+		assertEquals(2, registry.getRetainedClasspaths());
+		assertEquals(1, registry.getEvicted());
+		assertNull(registry.get(second));
+		assertNotNull(registry.get(first));
+
+		assertTrue(registry.release(first));
+		assertNull(registry.get(first));
+		assertEquals(1, registry.getReleased());
+		assertEquals(1, registry.getRetainedClasspaths());
+	}
+
+	@Test
+	public void collectedLoadersAreForgotten() throws InterruptedException {
+		ClasspathRegistry registry = new ClasspathRegistry();
+
+		registry.put(new URLClassLoader(new URL[0], null), classpath());
+
+		for (int count = 0; count < 50 && registry.getRetainedClasspaths() > 0; count++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+
+		assertEquals(0, registry.getRetainedClasspaths());
+		assertEquals(1, registry.getCollected());
+	}
+
+	class CountingListener implements ResourceScanListener {
+		final InterestAction action;
+		int scans;
+
+		CountingListener(InterestAction action) {
+			this.action = action;
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			scans++;
+
+			return null;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return action;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	private URLClassLoader directoryLoader() throws IOException {
+		File directory = Files.createTempDirectory("registry").toFile();
+		Files.write(new File(directory, "fred.txt").toPath(), "fred".getBytes("UTF-8"));
+
+		return new URLClassLoader(new URL[] {directory.toURI().toURL()}, null);
+	}
+
+	@Test
+	public void evictedLoadersDoNotTellListenersAgain() throws IOException {
+		ClasspathScanner.resetScannerForTesting();
+		ClasspathScanner.getRegistry().setMaxRetained(1);
+
+		CountingListener once = new CountingListener(ResourceScanListener.InterestAction.ONCE);
+		CountingListener repeat = new CountingListener(ResourceScanListener.InterestAction.REPEAT);
+
+		ClasspathScanner scanner = new ClasspathScanner();
+		scanner.registerResourceScanner(once);
+		scanner.registerResourceScanner(repeat);
+
+		URLClassLoader first = directoryLoader();
+		URLClassLoader second = directoryLoader();
+
+		scanner.scan(first);
+		scanner.scan(second);
+
+		assertEquals(1, ClasspathScanner.getRegistry().getEvicted());
+		assertEquals(2, once.scans);
+		assertEquals(2, repeat.scans);
+
+		scanner.scan(first);
+
+		assertEquals(2, once.scans);
+		assertEquals(3, repeat.scans);
+
+		ClasspathScanner.resetScannerForTesting();
+	}
+
+	/**
+	 * A listener a webapp might register, it is loaded by the webapp's own loader
+	 */
+	public static class WebappListener implements ResourceScanListener {
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			return null;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.REPEAT;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	/**
+	 * Loads WebappListener itself rather than asking its parent, like a webapp's loader does.
+	 */
+	private static class WebappLoader extends URLClassLoader {
+		WebappLoader(URL[] urls) {
+			super(urls, WebappListener.class.getClassLoader());
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.equals(WebappListener.class.getName())) {
+				Class<?> loaded = findLoadedClass(name);
+
+				return loaded == null ? findClass(name) : loaded;
+			}
+
+			return super.loadClass(name, resolve);
+		}
+	}
+
+	private WebappLoader webappLoader() throws IOException {
+		File directory = Files.createTempDirectory("webapp").toFile();
+		String classFile = WebappListener.class.getName().replace('.', '/') + ".class";
+		File listenerClass = new File(directory, classFile);
+
+		listenerClass.getParentFile().mkdirs();
+
+		InputStream stream = WebappListener.class.getClassLoader().getResourceAsStream(classFile);
+
+		try {
+			Files.copy(stream, listenerClass.toPath());
+		} finally {
+			stream.close();
+		}
+
+		return new WebappLoader(new URL[] {directory.toURI().toURL()});
+	}
+
+	private WeakReference<ClassLoader> scanWithWebappListener(ClasspathScanner scanner) throws Exception {
+		WebappLoader webapp = webappLoader();
+		ResourceScanListener listener = (ResourceScanListener) webapp.loadClass(WebappListener.class.getName()).getConstructor().newInstance();
+
+		assertSame(webapp, listener.getClass().getClassLoader());
+
+		scanner.registerResourceScanner(listener);
+		scanner.scan(webapp);
+		scanner.scan(directoryLoader()); // another classpath the listener is told about
+
+		assertTrue(scanner.release(webapp));
+
+		return new WeakReference<ClassLoader>(webapp);
+	}
+
+	@Test
+	public void releasedLoaderIsCollectedWithItsListeners() throws Exception {
+		ClasspathScanner.resetScannerForTesting();
+
+		ClasspathScanner scanner = new ClasspathScanner();
+		WeakReference<ClassLoader> webapp = scanWithWebappListener(scanner);
+
+		for (int count = 0; count < 50 && webapp.get() != null; count++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+
+		assertNull("the webapp's listener should have let go of its loader", webapp.get());
+		assertEquals(0, ClasspathScanner.allUncheckedListeners.size());
+
+		ClasspathScanner.resetScannerForTesting();
+	}
+}
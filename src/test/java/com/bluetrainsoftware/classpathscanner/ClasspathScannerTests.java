@@ -12,12 +12,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
 import static junit.framework.Assert.assertNotNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -212,6 +222,728 @@ public class ClasspathScannerTests {
 		}
 	}
 
+	@Test
+	public void parallelScan() throws IOException {
+		ClasspathScanner.resetScannerForTesting();
+
+		URL[] urls = new URL[6];
+
+		for(int count = 0; count < urls.length; count ++) {
+			File jarFile = File.createTempFile("parallel", ".jar");
+			jarFile.deleteOnExit();
+
+			urls[count] = createBangJar(jarFile, new String[] {""}, new Class[] {SimpleJarBangClass.class, SimpleJarClass.class})[0];
+		}
+
+		ClasspathScanner cp = new ClasspathScanner();
+		cp.getConfiguration().setParallel(true);
+
+		final AtomicInteger inside = new AtomicInteger();
+		final AtomicInteger overlaps = new AtomicInteger();
+		final List<ResourceScanListener.ScanResource> allScanResources = new ArrayList<>();
+		final Map<ResourceScanListener.ScanAction, Integer> scanChecker = new HashMap<>();
+
+		cp.registerResourceScanner(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				if (inside.incrementAndGet() > 1) {
+					overlaps.incrementAndGet();
+				}
+
+				Thread.sleep(5);
+				allScanResources.addAll(scanResources);
+				inside.decrementAndGet();
+
+				return null;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+				action(scanChecker, action);
+			}
+		});
+
+		URLClassLoader loader = new URLClassLoader(urls);
+
+		cp.scan(loader);
+		cp.scan(loader);
+
+		assertEquals("Should have found two classes per jar", 12, allScanResources.size());
+		assertEquals("Serialized listener should never be called concurrently", 0, overlaps.get());
+		assertEquals("Should have 1 start action", 1, scanChecker.get(ResourceScanListener.ScanAction.STARTING).intValue());
+		assertEquals("Should have 1 complete action", 1, scanChecker.get(ResourceScanListener.ScanAction.COMPLETE).intValue());
+	}
+
+	private void splitJar(ScanConfiguration.JarEngine engine) throws IOException {
+		File jarFile = File.createTempFile("split", ".war");
+		jarFile.deleteOnExit();
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile));
+
+		for (String offset : new String[] {"WEB-INF/classes/", "WEB-INF/jars/alpha/"}) {
+			for (int count = 0; count < 500; count++) {
+				stream.putNextEntry(new JarEntry(offset + "com/fred/Fred" + count + ".class"));
+				stream.write(count);
+			}
+		}
+
+		stream.close();
+
+		URL url = jarFile.toURI().toURL();
+		ClasspathResource resource = new ClasspathResource(jarFile, url);
+		resource.addJarOffset("WEB-INF/classes/", new URL("jar:" + url + "!/WEB-INF/classes/"));
+		resource.addJarOffset("WEB-INF/jars/alpha/", new URL("jar:" + url + "!/WEB-INF/jars/alpha/"));
+
+		final Set<String> seen = Collections.synchronizedSet(new HashSet<String>());
+		final AtomicInteger duplicates = new AtomicInteger();
+		final AtomicInteger mixedBatches = new AtomicInteger();
+
+		resource.askListeners(Collections.<ResourceScanListener>singletonList(new ConcurrentResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				for (ScanResource scanResource : scanResources) {
+					if (!seen.add(scanResource.offsetUrl + scanResource.resourceName)) {
+						duplicates.incrementAndGet();
+					}
+
+					if (!scanResource.offsetUrl.equals(scanResources.get(0).offsetUrl)) {
+						mixedBatches.incrementAndGet();
+					}
+				}
+
+				return null;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+			}
+		}));
+
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setJarEngine(engine);
+		configuration.setParallel(true);
+		configuration.setSplitJarThreshold(100);
+
+		resource.fireListeners(configuration);
+
+		assertEquals(1000, seen.size());
+		assertEquals(0, duplicates.get());
+		assertEquals(0, mixedBatches.get());
+	}
+
+	@Test
+	public void largeJarsAreSplitAcrossThreads() throws IOException {
+		splitJar(ScanConfiguration.JarEngine.JAR_FILE);
+		splitJar(ScanConfiguration.JarEngine.MAPPED);
+	}
+
+	private void pipelined(ScanConfiguration.JarEngine engine, Executor executor) throws IOException {
+		File jarFile = File.createTempFile("pipelined", ".jar");
+		jarFile.deleteOnExit();
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile));
+
+		for (int count = 0; count < 7000; count++) {
+			stream.putNextEntry(new JarEntry("com/fred/Fred" + count + ".txt"));
+			stream.write(Integer.toString(count).getBytes("UTF-8"));
+		}
+
+		stream.close();
+
+		ClasspathResource resource = new ClasspathResource(jarFile, jarFile.toURI().toURL());
+
+		final AtomicInteger batches = new AtomicInteger();
+		final Map<String, String> delivered = new HashMap<>();
+
+		resource.askListeners(Collections.<ResourceScanListener>singletonList(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				batches.incrementAndGet();
+
+				return scanResources;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+				try {
+					delivered.put(desire.resourceName, IOUtils.toString(inputStream, "UTF-8"));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+			}
+		}));
+
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setJarEngine(engine);
+		configuration.setPipelined(true);
+		configuration.setPipelineDepth(1);
+		configuration.setExecutor(executor);
+
+		resource.fireListeners(configuration);
+
+		assertEquals(3, batches.get());
+		assertEquals(7000, delivered.size());
+		assertEquals("6999", delivered.get("com/fred/Fred6999.txt"));
+	}
+
+	@Test
+	public void pipelinedScanDeliversEverything() throws IOException {
+		pipelined(ScanConfiguration.JarEngine.JAR_FILE, null);
+		pipelined(ScanConfiguration.JarEngine.MAPPED, null);
+
+		final AtomicInteger executed = new AtomicInteger();
+
+		// the stages run on the executor, and if it has no room the scan does the work itself
+		pipelined(ScanConfiguration.JarEngine.MAPPED, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				executed.incrementAndGet();
+
+				throw new RejectedExecutionException();
+			}
+		});
+
+		assertTrue(executed.get() > 0);
+	}
+
+	private Map<String, Long> walk(File dir, ScanConfiguration configuration) throws IOException {
+		final Map<String, Long> found = new TreeMap<>();
+
+		ClasspathResource resource = new ClasspathResource(dir, dir.toURI().toURL());
+		resource.askListeners(Collections.<ResourceScanListener>singletonList(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				for (ScanResource scanResource : scanResources) {
+					found.put(scanResource.resourceName, scanResource.file.isDirectory() ? -1 : scanResource.getSize());
+				}
+
+				return null;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+			}
+		}));
+
+		resource.fireListeners(configuration);
+
+		return found;
+	}
+
+	@Test
+	public void directoryWalkersAgree() throws IOException {
+		File dir = File.createTempFile("walk", "");
+		dir.delete();
+
+		for (String name : new String[] {"top.txt", "com/fred/Fred.class", "com/fred/mary/Mary.class", "com/.hidden/Hidden.class", "META-INF/.keep"}) {
+			File file = new File(dir, name);
+			file.getParentFile().mkdirs();
+
+			FileOutputStream stream = new FileOutputStream(file);
+			stream.write(name.getBytes("UTF-8"));
+			stream.close();
+		}
+
+		Map<String, Long> sequential = walk(dir, new ScanConfiguration());
+
+		ScanConfiguration parallel = new ScanConfiguration();
+		parallel.setParallel(true);
+
+		ScanConfiguration permits = new ScanConfiguration();
+		permits.setDirectoryIoPermits(4);
+
+		assertTrue(sequential.containsKey("com/fred/mary/Mary.class"));
+		assertTrue(sequential.containsKey("META-INF/.keep"));
+		assertTrue(!sequential.containsKey("com/.hidden/Hidden.class"));
+		assertEquals(sequential, walk(dir, parallel));
+		assertEquals(sequential, walk(dir, permits));
+	}
+
+	@Test
+	public void vanishingDirectoryDoesNotStopTheWalk() throws IOException {
+		for (ConcurrentDirectoryWalker walker : new ConcurrentDirectoryWalker[] {new ConcurrentDirectoryWalker(4), new ConcurrentDirectoryWalker(ForkJoinPool.commonPool())}) {
+			final File dir = Files.createTempDirectory("vanishing").toFile();
+
+			for (String name : new String[] {"com/fred/Fred.class", "com/gone/Gone.class", "com/mary/Mary.class"}) {
+				File file = new File(dir, name);
+				file.getParentFile().mkdirs();
+				file.createNewFile();
+			}
+
+			final Set<String> found = Collections.synchronizedSet(new HashSet<String>());
+
+			walker.walk(dir, new ConcurrentDirectoryWalker.Visitor() {
+				@Override
+				public void visit(String name, File file, BasicFileAttributes attributes) {
+					found.add(name);
+				}
+
+				@Override
+				public boolean descend(String packageName) {
+					if (packageName.equals("com/gone")) {
+						// deleted after com was listed but before it is
+						new File(dir, "com/gone/Gone.class").delete();
+						new File(dir, "com/gone").delete();
+					}
+
+					return true;
+				}
+			});
+
+			assertTrue(found.contains("com/fred/Fred.class"));
+			assertTrue(found.contains("com/mary/Mary.class"));
+			assertFalse(found.contains("com/gone/Gone.class"));
+		}
+	}
+
+	@Test
+	public void rejectingExecutorStillScans() throws IOException {
+		ClasspathScanner.resetScannerForTesting();
+
+		URL[] urls = new URL[3];
+
+		for(int count = 0; count < urls.length; count ++) {
+			File jarFile = File.createTempFile("rejected", ".jar");
+			jarFile.deleteOnExit();
+
+			urls[count] = createBangJar(jarFile, new String[] {""}, new Class[] {SimpleJarBangClass.class, SimpleJarClass.class})[0];
+		}
+
+		Executor rejecting = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("shut down");
+			}
+		};
+
+		ClasspathScanner cp = new ClasspathScanner();
+		cp.getConfiguration().setParallel(true);
+		cp.getConfiguration().setExecutor(rejecting);
+
+		final AtomicInteger found = new AtomicInteger();
+
+		cp.registerResourceScanner(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				found.addAndGet(scanResources.size());
+
+				return null;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+			}
+		});
+
+		cp.scan(new URLClassLoader(urls));
+
+		assertEquals(6, found.get());
+
+		// and directories, which are walked on the executor
+		File dir = Files.createTempDirectory("rejected").toFile();
+		File fred = new File(dir, "com/fred/Fred.class");
+		fred.getParentFile().mkdirs();
+		fred.createNewFile();
+
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setParallel(true);
+		configuration.setExecutor(rejecting);
+
+		assertTrue(walk(dir, configuration).containsKey("com/fred/Fred.class"));
+	}
+
+	@Test
+	public void singleThreadExecutorWalksDirectories() throws Exception {
+		ClasspathScanner.resetScannerForTesting();
+
+		URL[] urls = new URL[2];
+
+		for(int count = 0; count < urls.length; count ++) {
+			File dir = Files.createTempDirectory("single").toFile();
+
+			for (String name : new String[] {"com/fred/Fred.class", "com/fred/mary/Mary.class", "META-INF/fred.txt"}) {
+				File file = new File(dir, name);
+				file.getParentFile().mkdirs();
+				file.createNewFile();
+			}
+
+			urls[count] = dir.toURI().toURL();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+
+		final ClasspathScanner cp = new ClasspathScanner();
+		cp.getConfiguration().setParallel(true);
+		cp.getConfiguration().setExecutor(executor);
+
+		final AtomicInteger found = new AtomicInteger();
+
+		cp.registerResourceScanner(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				for (ScanResource scanResource : scanResources) {
+					if (!scanResource.file.isDirectory()) {
+						found.incrementAndGet();
+					}
+				}
+
+				return null;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+			}
+		});
+
+		final URLClassLoader loader = new URLClassLoader(urls, null);
+
+		// the one thread walks one directory and can't help with the other, which mustn't wait for it
+		Thread scan = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				cp.scan(loader);
+			}
+		});
+
+		scan.setDaemon(true);
+		scan.start();
+		scan.join(10000);
+
+		try {
+			assertFalse("The scan should not hang waiting for the executor", scan.isAlive());
+			assertEquals(6, found.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void mappedEngineScan() throws IOException {
+		ClasspathScanner.resetScannerForTesting();
+
+		File jarFile = File.createTempFile("mapped", ".war");
+		jarFile.deleteOnExit();
+
+		URL[] bangUrls =
+			createBangJar(jarFile, new String[] {WEB_INF_CLASSES, WEB_INF_MYCLASSES},
+				new Class[] {SimpleJarBangClass.class, SimpleJarClass.class});
+
+		ClasspathScanner cp = new ClasspathScanner();
+		cp.getConfiguration().setJarEngine(ScanConfiguration.JarEngine.MAPPED);
+
+		final List<String> names = new ArrayList<>();
+		final List<Integer> sizes = new ArrayList<>();
+
+		cp.registerResourceScanner(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				for(ScanResource resource : scanResources) {
+					names.add(resource.offsetUrl.toString() + resource.resourceName);
+				}
+
+				return scanResources;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+				try {
+					sizes.add(IOUtils.toByteArray(inputStream).length);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+			}
+		});
+
+		cp.scan(new URLClassLoader(bangUrls));
+
+		String clazzPath = SimpleJarClass.class.getName().replace(".", "/") + ".class";
+
+		assertEquals("Should have found four classes", 4, names.size());
+		assertTrue(names.contains(bangUrls[0].toString() + clazzPath));
+		assertEquals(4, sizes.size());
+		assertTrue(sizes.get(0) > 0);
+	}
+
+	@Test
+	public void concurrentScansShareOneScan() throws Exception {
+		ClasspathScanner.resetScannerForTesting();
+
+		File jarFile = File.createTempFile("single", ".jar");
+		jarFile.deleteOnExit();
+
+		URL[] urls = createBangJar(jarFile, new String[] {""}, new Class[] {SimpleJarClass.class});
+
+		final ClasspathScanner cp = new ClasspathScanner();
+		final CountDownLatch scanning = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final Map<ResourceScanListener.ScanAction, Integer> scanChecker = new HashMap<>();
+		final AtomicInteger lateResources = new AtomicInteger();
+
+		cp.registerResourceScanner(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				scanning.countDown();
+				finish.await();
+
+				return null;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.REPEAT;
+			}
+
+			@Override
+			public synchronized void scanAction(ScanAction action) {
+				action(scanChecker, action);
+			}
+		});
+
+		final URLClassLoader loader = new URLClassLoader(urls);
+		final List<List<ClasspathResource>> results = Collections.synchronizedList(new ArrayList<List<ClasspathResource>>());
+		List<Thread> threads = new ArrayList<>();
+
+		for(int count = 0; count < 3; count ++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					results.add(cp.scan(loader));
+				}
+			});
+
+			threads.add(thread);
+			thread.start();
+		}
+
+		scanning.await();
+
+		// registered during the scan, too late for it, so the scans that joined it go again
+		cp.registerResourceScanner(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				lateResources.addAndGet(scanResources.size());
+				return null;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+			}
+		});
+
+		Thread.sleep(200); // let the other scans pile up behind the first
+		finish.countDown();
+
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(3, results.size());
+		assertTrue(results.get(0) == results.get(1) && results.get(1) == results.get(2));
+		assertEquals("Scans that arrive during a scan should share it, and one more for the late listener", 2,
+			scanChecker.get(ResourceScanListener.ScanAction.STARTING).intValue());
+		assertEquals("The late listener is told before the joined scans return", 1, lateResources.get());
+
+		cp.scan(loader);
+
+		assertEquals("The late listener only wanted telling once", 1, lateResources.get());
+	}
+
+	@Test
+	public void listenersCanScanFromInsideAScan() throws Exception {
+		for (final boolean parallel : new boolean[] {false, true}) {
+			ClasspathScanner.resetScannerForTesting();
+
+			File first = File.createTempFile("reentrant", ".jar");
+			first.deleteOnExit();
+			File second = File.createTempFile("reentrant", ".jar");
+			second.deleteOnExit();
+
+			final URL[] urls = {createBangJar(first, new String[] {""}, new Class[] {SimpleJarClass.class})[0],
+				createBangJar(second, new String[] {""}, new Class[] {SimpleJarBangClass.class})[0]};
+
+			final ClasspathScanner cp = new ClasspathScanner();
+			cp.getConfiguration().setParallel(parallel);
+
+			final URLClassLoader loader = new URLClassLoader(urls);
+			final AtomicInteger resources = new AtomicInteger();
+
+			cp.registerResourceScanner(new ResourceScanListener() {
+				@Override
+				public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+					resources.addAndGet(scanResources.size());
+					cp.scan(loader);
+
+					return null;
+				}
+
+				@Override
+				public void deliver(ScanResource desire, InputStream inputStream) {
+				}
+
+				@Override
+				public InterestAction isInteresting(InterestingResource interestingResource) {
+					return InterestAction.REPEAT;
+				}
+
+				@Override
+				public void scanAction(ScanAction action) {
+					if (action == ScanAction.STARTING) {
+						cp.scan(loader);
+					}
+				}
+			});
+
+			Thread scan = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					cp.scan(loader);
+				}
+			});
+
+			scan.setDaemon(true);
+			scan.start();
+			scan.join(10000);
+
+			assertFalse("A listener scanning from inside the scan must not deadlock", scan.isAlive());
+			assertTrue(resources.get() > 0);
+		}
+	}
+
+	@Test
+	public void parentChainScan() throws IOException {
+		ClasspathScanner.resetScannerForTesting();
+
+		URL[] jars = new URL[3];
+
+		for(int count = 0; count < jars.length; count ++) {
+			File jarFile = File.createTempFile("chain", ".jar");
+			jarFile.deleteOnExit();
+
+			jars[count] = createBangJar(jarFile, new String[] {""}, new Class[] {SimpleJarClass.class})[0];
+		}
+
+		ClasspathScanner cp = new ClasspathScanner();
+		cp.getConfiguration().setScanParents(true);
+
+		final List<URL> scanned = new ArrayList<>();
+
+		cp.registerResourceScanner(new ResourceScanListener() {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				for(ScanResource resource : scanResources) {
+					scanned.add(resource.url);
+				}
+
+				return null;
+			}
+
+			@Override
+			public void deliver(ScanResource desire, InputStream inputStream) {
+			}
+
+			@Override
+			public InterestAction isInteresting(InterestingResource interestingResource) {
+				return InterestAction.ONCE;
+			}
+
+			@Override
+			public void scanAction(ScanAction action) {
+			}
+		});
+
+		URLClassLoader parent = new URLClassLoader(new URL[] {jars[0]}, null);
+		URLClassLoader first = new URLClassLoader(new URL[] {jars[0], jars[1]}, parent); // repeats the parent's jar
+		URLClassLoader second = new URLClassLoader(new URL[] {jars[2]}, parent);
+
+		List<ClasspathResource> firstResources = cp.scan(first);
+		List<ClasspathResource> secondResources = cp.scan(second);
+
+		assertEquals(2, firstResources.size());
+		assertEquals(2, secondResources.size());
+		assertTrue("The parent's resources are shared", firstResources.get(0) == secondResources.get(0));
+		assertEquals(1, ClasspathScanner.resources.get(first).classpaths.size());
+		assertNotNull(ClasspathScanner.resources.get(parent));
+
+		assertEquals("Each jar should be scanned once", 3, scanned.size());
+		assertEquals(3, new HashSet<>(scanned).size());
+	}
+
 	private static final String WEB_INF_CLASSES = "WEB-INF/classes/";
 	private static final String WEB_INF_MYCLASSES = "WEB-INF/jars/my-file-1.1/";
 
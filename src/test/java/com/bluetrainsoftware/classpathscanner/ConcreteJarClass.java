@@ -0,0 +1,17 @@
+package com.bluetrainsoftware.classpathscanner;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+@SuppressWarnings("deprecation")
+public class ConcreteJarClass extends AnnotatedJarClass {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public void annotatedMethod() {
+	}
+
+	@Override
+	public void run() {
+	}
+}
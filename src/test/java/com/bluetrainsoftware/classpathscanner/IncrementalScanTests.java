@@ -0,0 +1,286 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class IncrementalScanTests {
+	class DeltaListener implements IncrementalResourceScanListener {
+		final List<String> offered = new ArrayList<>();
+		final List<ScanDelta> deltas = new ArrayList<>();
+
+		@Override
+		public void delta(ScanDelta delta) {
+			deltas.add(delta);
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			for (ScanResource scanResource : scanResources) {
+				offered.add(scanResource.resourceName);
+			}
+
+			return null;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.REPEAT;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+
+		void reset() {
+			offered.clear();
+			deltas.clear();
+		}
+	}
+
+	private static List<String> names(List<ResourceScanListener.ScanResource> resources) {
+		List<String> names = new ArrayList<>();
+
+		for (ResourceScanListener.ScanResource resource : resources) {
+			names.add(resource.resourceName);
+		}
+
+		return names;
+	}
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+
+		FileOutputStream stream = new FileOutputStream(file);
+		stream.write(content.getBytes("UTF-8"));
+		stream.close();
+	}
+
+	private static void writeJar(File jar, Map<String, String> entries, long lastModified) throws IOException {
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			stream.putNextEntry(new JarEntry(entry.getKey()));
+			stream.write(entry.getValue().getBytes("UTF-8"));
+		}
+
+		stream.close();
+		jar.setLastModified(lastModified);
+	}
+
+	private static ClasspathResource resource(File source, DeltaListener listener) throws IOException {
+		ClasspathResource resource = new ClasspathResource(source, source.toURI().toURL());
+		List<ResourceScanListener> listeners = new ArrayList<>();
+		listeners.add(listener);
+		resource.askListeners(listeners);
+
+		return resource;
+	}
+
+	private void directoryRescansOnlyDeliverChanges(ScanConfiguration configuration) throws IOException {
+		File dir = File.createTempFile("incremental", "");
+		dir.delete();
+		dir.mkdirs();
+
+		File fred = new File(dir, "com/fred/Fred.txt");
+		File mary = new File(dir, "com/fred/Mary.txt");
+		write(fred, "fred");
+		write(mary, "mary");
+
+		DeltaListener listener = new DeltaListener();
+		ClasspathResource resource = resource(dir, listener);
+
+		resource.fireListeners(configuration);
+
+		assertTrue(listener.offered.contains("com/fred/Fred.txt"));
+		assertEquals(0, listener.deltas.size());
+
+		listener.reset();
+		resource.fireListeners(configuration);
+
+		assertEquals(0, listener.offered.size());
+		assertEquals(0, listener.deltas.size());
+
+		write(fred, "fred has changed");
+		fred.setLastModified(fred.lastModified() + 5000);
+		mary.delete();
+		write(new File(dir, "com/fred/Sue.txt"), "sue");
+
+		listener.reset();
+		resource.fireListeners(configuration);
+
+		assertEquals(1, listener.deltas.size());
+		ScanDelta delta = listener.deltas.get(0);
+		assertEquals(names(delta.added).toString(), 1, delta.added.size());
+		assertEquals("com/fred/Sue.txt", delta.added.get(0).resourceName);
+		assertEquals(1, delta.modified.size());
+		assertEquals("com/fred/Fred.txt", delta.modified.get(0).resourceName);
+		assertEquals(1, delta.removed.size());
+		assertEquals("com/fred/Mary.txt", delta.removed.get(0).resourceName);
+		assertEquals(2, listener.offered.size());
+	}
+
+	@Test
+	public void directoryRescansOnlyDeliverChanges() throws IOException {
+		directoryRescansOnlyDeliverChanges(new ScanConfiguration());
+	}
+
+	@Test
+	public void concurrentDirectoryRescansOnlyDeliverChanges() throws IOException {
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setDirectoryIoPermits(8);
+
+		directoryRescansOnlyDeliverChanges(configuration);
+	}
+
+	@Test
+	public void parallelDirectoryRescansOnlyDeliverChanges() throws IOException {
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setParallel(true);
+
+		directoryRescansOnlyDeliverChanges(configuration);
+	}
+
+	private void jarRescansOnlyDeliverChanges(ScanConfiguration configuration) throws IOException {
+		File jar = File.createTempFile("incremental", ".jar");
+		jar.deleteOnExit();
+
+		Map<String, String> entries = new TreeMap<>();
+		entries.put("com/fred/Fred.txt", "fred");
+		entries.put("com/fred/Mary.txt", "mary");
+		writeJar(jar, entries, 1000000000000L);
+
+		DeltaListener listener = new DeltaListener();
+		DeltaListener latecomer = new DeltaListener();
+		ClasspathResource resource = resource(jar, listener);
+
+		resource.fireListeners(configuration);
+		assertEquals(2, listener.offered.size());
+
+		listener.reset();
+		resource.fireListeners(configuration);
+		assertEquals(0, listener.offered.size());
+		assertEquals(0, listener.deltas.size());
+
+		entries.put("com/fred/Fred.txt", "fred has changed");
+		entries.remove("com/fred/Mary.txt");
+		entries.put("com/fred/Sue.txt", "sue");
+		writeJar(jar, entries, 1000000010000L);
+
+		// a new listener needs everything while the old one only gets the changes
+		List<ResourceScanListener> listeners = new ArrayList<>();
+		listeners.add(latecomer);
+		resource.askListeners(listeners);
+
+		listener.reset();
+		resource.fireListeners(configuration);
+
+		assertEquals(1, listener.deltas.size());
+		ScanDelta delta = listener.deltas.get(0);
+		assertEquals("com/fred/Sue.txt", delta.added.get(0).resourceName);
+		assertEquals("com/fred/Fred.txt", delta.modified.get(0).resourceName);
+		assertEquals("com/fred/Mary.txt", delta.removed.get(0).resourceName);
+		assertEquals(2, listener.offered.size());
+
+		assertEquals(2, latecomer.offered.size());
+		assertEquals(0, latecomer.deltas.size());
+	}
+
+	@Test
+	public void jarRescansOnlyDeliverChanges() throws IOException {
+		jarRescansOnlyDeliverChanges(new ScanConfiguration());
+	}
+
+	@Test
+	public void watchedDirectoryRescansWhenItChanges() throws Exception {
+		File dir = File.createTempFile("watched", "");
+		dir.delete();
+		dir.mkdirs();
+
+		write(new File(dir, "com/fred/Fred.txt"), "fred");
+		write(new File(dir, "com/fred/Mary.txt"), "mary");
+
+		DeltaListener listener = new DeltaListener();
+		final ClasspathResource resource = resource(dir, listener);
+		final Semaphore rescans = new Semaphore(0);
+
+		resource.watch(50, new Runnable() {
+			@Override
+			public void run() {
+				resource.fireListeners();
+				rescans.release();
+			}
+		});
+
+		try {
+			resource.fireListeners();
+			assertEquals(4, listener.offered.size()); // the directories too
+
+			listener.reset();
+
+			// a burst of changes
+			write(new File(dir, "com/fred/Sue.txt"), "sue");
+			write(new File(dir, "com/fred/bob/Bob.txt"), "bob");
+			new File(dir, "com/fred/Mary.txt").delete();
+
+			assertTrue(rescans.tryAcquire(10, TimeUnit.SECONDS));
+			// events may straggle in after the first rescan
+			while (rescans.tryAcquire(500, TimeUnit.MILLISECONDS));
+
+			List<String> added = new ArrayList<>();
+			List<String> removed = new ArrayList<>();
+
+			for (ScanDelta delta : listener.deltas) {
+				added.addAll(names(delta.added));
+				removed.addAll(names(delta.removed));
+			}
+
+			assertTrue(added.toString(), added.contains("com/fred/Sue.txt"));
+			assertTrue(added.toString(), added.contains("com/fred/bob/Bob.txt"));
+			assertEquals(1, removed.size());
+			assertEquals("com/fred/Mary.txt", removed.get(0));
+
+			// a listener that wants everything still gets everything, from the snapshot
+			DeltaListener everything = new DeltaListener();
+			List<ResourceScanListener> listeners = new ArrayList<>();
+			listeners.add(everything);
+			resource.askListeners(listeners);
+
+			resource.fireListeners();
+			assertTrue(everything.offered.toString(), everything.offered.contains("com/fred/bob/Bob.txt"));
+			assertTrue(everything.offered.contains("com/fred/Fred.txt"));
+			assertTrue(!everything.offered.contains("com/fred/Mary.txt"));
+		} finally {
+			resource.stopWatching();
+		}
+	}
+
+	@Test
+	public void mappedJarRescansOnlyDeliverChanges() throws IOException {
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setJarEngine(ScanConfiguration.JarEngine.MAPPED);
+
+		jarRescansOnlyDeliverChanges(configuration);
+	}
+}
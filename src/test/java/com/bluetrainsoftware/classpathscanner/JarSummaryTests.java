@@ -0,0 +1,151 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class JarSummaryTests {
+	private static final String[] NAMES = {"META-INF/", "META-INF/MANIFEST.MF", "com/acme/A.class", "com/acme/sub/B.class",
+		"META-INF/spring.factories", "top.properties", "WEB-INF/classes/org/x/C.class"};
+
+	@Test
+	public void summaryRulesOutWhatIsNotThere() {
+		JarSummary summary = JarSummary.of(NAMES);
+
+		assertTrue(summary.couldMatch(new ResourceFilter().packageRoot("com.acme"), ""));
+		assertTrue(summary.couldMatch(new ResourceFilter().packageRoot("com"), ""));
+		assertFalse(summary.couldMatch(new ResourceFilter().packageRoot("com.other"), ""));
+		assertTrue(summary.couldMatch(new ResourceFilter().prefix("com/ac"), ""));
+		assertFalse(summary.couldMatch(new ResourceFilter().prefix("org/"), ""));
+		assertTrue(summary.couldMatch(new ResourceFilter().prefix("top"), ""));
+		assertTrue(summary.couldMatch(new ResourceFilter().glob("META-INF/spring.factories"), ""));
+		assertFalse(summary.couldMatch(new ResourceFilter().glob("META-INF/spring.handlers", "org/**/*.class"), ""));
+		assertTrue(summary.couldMatch(new ResourceFilter().glob("**/*.xml"), ""));
+		assertTrue(summary.couldMatch(new ResourceFilter().suffix(".xml"), ""));
+
+		// in an offset
+		assertTrue(summary.couldMatch(new ResourceFilter().packageRoot("org.x"), "WEB-INF/classes/"));
+		assertFalse(summary.couldMatch(new ResourceFilter().packageRoot("com.acme"), "WEB-INF/classes/"));
+	}
+
+	class NameListener implements FilteredResourceScanListener {
+		final ResourceFilter filter;
+		final List<String> names = new ArrayList<>();
+
+		NameListener(ResourceFilter filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		public ResourceFilter getResourceFilter() {
+			return filter;
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			for (ScanResource scanResource : scanResources) {
+				names.add(scanResource.resourceName);
+			}
+
+			return null;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.ONCE;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	@Test
+	public void jarsNoListenerCouldWantAreSkippedFromTheIndex() throws IOException {
+		File jar = File.createTempFile("summary", ".jar");
+		jar.deleteOnExit();
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+
+		for (String name : NAMES) {
+			stream.putNextEntry(new JarEntry(name));
+		}
+
+		stream.close();
+
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setJarEngine(ScanConfiguration.JarEngine.MAPPED);
+		configuration.setIndexDirectory(Files.createTempDirectory("index").toFile());
+
+		NameListener listener = new NameListener(new ResourceFilter().packageRoot("org.nothing"));
+		List<ResourceScanListener> listeners = new ArrayList<>();
+		listeners.add(listener);
+
+		ClasspathResource resource = new ClasspathResource(jar, jar.toURI().toURL());
+		resource.askListeners(listeners);
+		resource.fireListeners(configuration);
+
+		assertEquals(0, listener.names.size());
+		assertEquals(NAMES.length, resource.getSkipped());
+
+		// another JVM gets the summary without listing the jar again
+		ScanIndex scanIndex = new ScanIndex(configuration.getScanIndex().getDirectory());
+
+		assertFalse(scanIndex.summary(jar).couldMatch(new ResourceFilter().packageRoot("org.nothing"), ""));
+		assertTrue(scanIndex.summary(jar).couldMatch(new ResourceFilter().packageRoot("com.acme"), ""));
+		assertEquals(0, scanIndex.getMisses());
+	}
+
+	@Test
+	public void jarFileSummariesComeFromTheScansListing() throws IOException {
+		File jar = File.createTempFile("summary", ".jar");
+		jar.deleteOnExit();
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+
+		for (String name : NAMES) {
+			stream.putNextEntry(new JarEntry(name));
+		}
+
+		stream.close();
+
+		// without an index the jar isn't listed just for its summary
+		assertNull(SharedJarListings.shared.summary(jar, null, ScanConfiguration.JarEngine.JAR_FILE));
+
+		for (int scan = 0; scan < 2; scan++) {
+			NameListener listener = new NameListener(new ResourceFilter().packageRoot("org.nothing"));
+			List<ResourceScanListener> listeners = new ArrayList<>();
+			listeners.add(listener);
+
+			ClasspathResource resource = new ClasspathResource(jar, jar.toURI().toURL());
+			resource.askListeners(listeners);
+			resource.fireListeners(new ScanConfiguration());
+
+			assertEquals(0, listener.names.size());
+		}
+
+		// the first scan's listing left a summary for the scans after it
+		assertFalse(SharedJarListings.shared.summary(jar, null, ScanConfiguration.JarEngine.JAR_FILE)
+			.couldMatch(new ResourceFilter().packageRoot("org.nothing"), ""));
+	}
+}
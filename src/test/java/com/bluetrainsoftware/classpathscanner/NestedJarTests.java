@@ -0,0 +1,220 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class NestedJarTests {
+	class ContentListener implements FilteredResourceScanListener {
+		final Map<String, String> contents = new TreeMap<>();
+		final List<String> urls = new ArrayList<>();
+
+		@Override
+		public ResourceFilter getResourceFilter() {
+			return new ResourceFilter().suffix(".properties");
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			for (ScanResource scanResource : scanResources) {
+				urls.add(scanResource.getResolvedUrl().toString());
+			}
+
+			return scanResources;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+			try {
+				contents.put(desire.resourceName, IOUtils.toString(inputStream, "UTF-8"));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.REPEAT;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	private static byte[] jar(String... names) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JarOutputStream stream = new JarOutputStream(bytes);
+
+		for (String name : names) {
+			stream.putNextEntry(new JarEntry(name));
+			stream.write(("content of " + name).getBytes("UTF-8"));
+		}
+
+		stream.close();
+
+		return bytes.toByteArray();
+	}
+
+	private static void stored(JarOutputStream stream, String name, byte[] data) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		JarEntry entry = new JarEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(data.length);
+		entry.setCrc(crc.getValue());
+
+		stream.putNextEntry(entry);
+		stream.write(data);
+	}
+
+	private File createWar() throws IOException {
+		File war = File.createTempFile("nested", ".war");
+		war.deleteOnExit();
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(war));
+
+		stream.putNextEntry(new JarEntry("WEB-INF/classes/app.properties"));
+		stream.write("content of app.properties".getBytes("UTF-8"));
+
+		stored(stream, "WEB-INF/lib/stored.jar", jar("stored/a.properties", "stored/A.class", "stored/b.properties"));
+
+		stream.putNextEntry(new JarEntry("WEB-INF/lib/deflated.jar"));
+		stream.write(jar("deflated/c.properties", "deflated/C.class", "deflated/d.properties"));
+
+		stream.close();
+
+		return war;
+	}
+
+	private ContentListener scan(File war, boolean nested, ScanConfiguration.JarEngine engine) throws IOException {
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setScanNestedJars(nested);
+		configuration.setJarEngine(engine);
+
+		return scan(war, configuration);
+	}
+
+	private ContentListener scan(File war, ScanConfiguration configuration) throws IOException {
+		ContentListener listener = new ContentListener();
+		List<ResourceScanListener> listeners = new ArrayList<>();
+		listeners.add(listener);
+
+		ClasspathResource resource = new ClasspathResource(war, war.toURI().toURL());
+		resource.askListeners(listeners);
+		resource.fireListeners(configuration);
+
+		return listener;
+	}
+
+	private void nestedJarsAreScannedInPlace(ScanConfiguration.JarEngine engine) throws IOException {
+		File war = createWar();
+
+		ContentListener listener = scan(war, true, engine);
+
+		assertEquals(5, listener.contents.size());
+
+		for (String name : new String[] {"stored/a.properties", "stored/b.properties", "deflated/c.properties", "deflated/d.properties"}) {
+			assertEquals("content of " + name, listener.contents.get(name));
+		}
+
+		assertEquals("content of app.properties", listener.contents.get("WEB-INF/classes/app.properties"));
+		assertTrue(listener.urls.contains("jar:" + war.toURI().toURL() + "!/WEB-INF/lib/stored.jar!/stored/a.properties"));
+		assertTrue(listener.urls.contains("jar:" + war.toURI().toURL() + "!/WEB-INF/lib/deflated.jar!/deflated/d.properties"));
+
+		// and without the option, only the war itself
+		listener = scan(war, false, engine);
+
+		assertEquals(1, listener.contents.size());
+		assertFalse(listener.contents.containsKey("stored/a.properties"));
+	}
+
+	@Test
+	public void nestedJarsWithJarFile() throws IOException {
+		nestedJarsAreScannedInPlace(ScanConfiguration.JarEngine.JAR_FILE);
+	}
+
+	@Test
+	public void nestedJarsWithMapped() throws IOException {
+		nestedJarsAreScannedInPlace(ScanConfiguration.JarEngine.MAPPED);
+	}
+
+	@Test
+	public void compressedNestedJarsAreExtractedOnce() throws IOException {
+		File extractionDirectory = Files.createTempDirectory("extracted").toFile();
+
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setScanNestedJars(true);
+		configuration.setExtractionDirectory(extractionDirectory);
+
+		ExtractionCache cache = configuration.getExtractionCache();
+
+		ContentListener listener = scan(createWar(), configuration);
+
+		assertEquals("content of deflated/d.properties", listener.contents.get("deflated/d.properties"));
+		assertEquals(1, cache.getMisses());
+
+		// a different war with the same nested jar
+		listener = scan(createWar(), configuration);
+
+		assertEquals("content of deflated/c.properties", listener.contents.get("deflated/c.properties"));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, extractionDirectory.listFiles().length);
+
+		// another JVM sharing the directory doesn't trust a file of the right length that has been tampered with
+		File extracted = extractionDirectory.listFiles()[0];
+		byte[] tampered = Files.readAllBytes(extracted.toPath());
+		tampered[tampered.length / 2] ^= 1;
+		Files.write(extracted.toPath(), tampered);
+
+		ScanConfiguration another = new ScanConfiguration();
+		another.setScanNestedJars(true);
+		another.setExtractionDirectory(extractionDirectory);
+
+		listener = scan(createWar(), another);
+
+		assertEquals("content of deflated/c.properties", listener.contents.get("deflated/c.properties"));
+		assertEquals(1, another.getExtractionCache().getMisses());
+		assertEquals(0, another.getExtractionCache().getHits());
+
+		// too small for two, so the least recently used goes
+		cache.setMaxSize(1);
+
+		File war = File.createTempFile("nested", ".war");
+		war.deleteOnExit();
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(war));
+		stream.putNextEntry(new JarEntry("WEB-INF/lib/other.jar"));
+		stream.write(jar("other/e.properties"));
+		stream.close();
+
+		listener = scan(war, configuration);
+
+		assertEquals("content of other/e.properties", listener.contents.get("other/e.properties"));
+		assertEquals(1, cache.getEvicted());
+		assertEquals(1, extractionDirectory.listFiles().length);
+	}
+}
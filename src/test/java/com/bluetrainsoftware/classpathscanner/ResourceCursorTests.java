@@ -0,0 +1,174 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ResourceCursorTests {
+	private static final String[] NAMES = {"com/acme/keep.txt", "com/acme/skip.txt", "com/acme/A.class"};
+
+	/**
+	 * Only in the jar, not every file system can name a file with it
+	 */
+	private static final String UNICODE_NAME = "caf\u00e9/keep.txt";
+
+	class PinningListener implements CursorResourceScanListener, FilteredResourceScanListener {
+		final Map<String, Long> visited = new TreeMap<>();
+		final Map<String, String> delivered = new TreeMap<>();
+
+		@Override
+		public ResourceFilter getResourceFilter() {
+			return new ResourceFilter().suffix(".txt");
+		}
+
+		@Override
+		public void visit(ResourceCursor cursor) throws Exception {
+			String name = cursor.getName().toString();
+
+			visited.put(name.startsWith("/") ? name.substring(1) : name, cursor.getSize());
+
+			if (cursor.getName().charAt(cursor.getName().length() - 8) == 'k') {
+				ScanResource pinned = cursor.pin();
+
+				assertEquals(name, pinned.resourceName);
+				assertTrue(cursor.getCrc() == -1 || cursor.getCrc() == crc(pinned.resourceName));
+			}
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			throw new IllegalStateException("cursor listeners are never asked");
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+			try {
+				delivered.put(desire.resourceName.startsWith("/") ? desire.resourceName.substring(1) : desire.resourceName, IOUtils.toString(inputStream, "UTF-8"));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.REPEAT;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	class ClassListener implements FilteredResourceScanListener {
+		final TreeSet<String> names = new TreeSet<>();
+
+		@Override
+		public ResourceFilter getResourceFilter() {
+			return new ResourceFilter().suffix(".class");
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			for (ScanResource scanResource : scanResources) {
+				names.add(scanResource.resourceName);
+			}
+
+			return null;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.REPEAT;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	private static long crc(String name) {
+		CRC32 crc = new CRC32();
+		crc.update(name.getBytes(Charset.forName("UTF-8")));
+
+		return crc.getValue();
+	}
+
+	@Test
+	public void onlyPinnedResourcesAreDelivered() throws IOException {
+		File jar = File.createTempFile("cursor", ".jar");
+		jar.deleteOnExit();
+		File directory = Files.createTempDirectory("cursor").toFile();
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+
+		for (String name : NAMES) {
+			stream.putNextEntry(new JarEntry(name));
+			stream.write(name.getBytes("UTF-8"));
+
+			File file = new File(directory, name);
+			file.getParentFile().mkdirs();
+			Files.write(file.toPath(), name.getBytes("UTF-8"));
+		}
+
+		stream.putNextEntry(new JarEntry(UNICODE_NAME));
+		stream.write(UNICODE_NAME.getBytes("UTF-8"));
+		stream.close();
+
+		List<ScanConfiguration> configurations = new ArrayList<>();
+
+		for (ScanConfiguration.JarEngine engine : ScanConfiguration.JarEngine.values()) {
+			ScanConfiguration configuration = new ScanConfiguration();
+			configuration.setJarEngine(engine);
+			configurations.add(configuration);
+		}
+
+		ScanConfiguration pipelined = new ScanConfiguration();
+		pipelined.setPipelined(true);
+		configurations.add(pipelined);
+
+		for (ScanConfiguration configuration : configurations) {
+			for (File source : new File[] {jar, directory}) {
+				PinningListener pinning = new PinningListener();
+				ClassListener classes = new ClassListener();
+				List<ResourceScanListener> listeners = new ArrayList<>();
+				listeners.add(pinning);
+				listeners.add(classes);
+
+				ClasspathResource resource = new ClasspathResource(source, source.toURI().toURL());
+				resource.askListeners(listeners);
+				resource.fireListeners(configuration);
+
+				String unicode = source == jar ? UNICODE_NAME + ", " : "";
+
+				assertEquals("[" + unicode + "com/acme/keep.txt, com/acme/skip.txt]", pinning.visited.keySet().toString());
+				assertEquals(Long.valueOf("com/acme/skip.txt".length()), pinning.visited.get("com/acme/skip.txt"));
+				assertEquals("{" + (source == jar ? UNICODE_NAME + "=" + UNICODE_NAME + ", " : "") + "com/acme/keep.txt=com/acme/keep.txt}", pinning.delivered.toString());
+				assertEquals(1, classes.names.size());
+			}
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ResourceFilterTests {
+	private boolean raw(ResourceFilter filter, String name) {
+		byte[] bytes = name.getBytes(Charset.forName("UTF-8"));
+		RawName rawName = new RawName().set(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+		return filter.matches(rawName, 0, bytes.length, true);
+	}
+
+	/**
+	 * As a name in a central directory is matched, little endian so it is compared a word at a time, in a jar offset
+	 * and as a directory.
+	 */
+	private boolean rawInOffset(ResourceFilter filter, String name) {
+		byte[] bytes = ("WEB-INF/classes/" + name + "/").getBytes(Charset.forName("UTF-8"));
+		RawName rawName = new RawName().set(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), 0, bytes.length);
+
+		return filter.matches(rawName, "WEB-INF/classes/".length(), bytes.length - 1, true);
+	}
+
+	private void check(boolean expected, ResourceFilter filter, String name) {
+		assertEquals(name, expected, filter.matches(name));
+		assertEquals(name + " (raw)", expected, raw(filter, name));
+		assertEquals(name + " (raw in offset)", expected, rawInOffset(filter, name));
+	}
+
+	@Test
+	public void prefixesAndSuffixes() {
+		ResourceFilter filter = new ResourceFilter().prefix("META-INF/").suffix(".class");
+
+		check(true, filter, "META-INF/web-fragment.xml");
+		check(true, filter, "com/bluetrainsoftware/Fred.class");
+		check(false, filter, "com/bluetrainsoftware/fred.xml");
+		assertTrue(filter.matches("/META-INF/web-fragment.xml"));
+	}
+
+	@Test
+	public void packageRoots() {
+		ResourceFilter filter = new ResourceFilter().packageRoot("com.acme");
+
+		check(true, filter, "com/acme");
+		check(true, filter, "com/acme/Fred.class");
+		check(false, filter, "com/acmeindustries/Fred.class");
+		check(false, filter, "com");
+	}
+
+	@Test
+	public void globs() {
+		ResourceFilter filter = new ResourceFilter().glob("**/*.xml", "META-INF/services/?ervice", "com/*/Fr\u00e9d.class");
+
+		check(true, filter, "web.xml");
+		check(true, filter, "WEB-INF/classes/web.xml");
+		check(false, filter, "WEB-INF/classes/web.xmlx");
+		check(true, filter, "META-INF/services/Service");
+		check(false, filter, "META-INF/services/a/ervice");
+		check(true, filter, "com/acme/Fr\u00e9d.class");
+		check(false, filter, "com/acme/sub/Fr\u00e9d.class");
+		check(true, new ResourceFilter().glob("com/?/X"), "com/\u00e9/X");
+
+		filter = new ResourceFilter().glob("com/bluetrainsoftware/**/*Listener.class", "**/META-INF/spring.factories");
+
+		check(true, filter, "com/bluetrainsoftware/ResourceScanListener.class");
+		check(true, filter, "com/bluetrainsoftware/a/b/ResourceScanListener.class");
+		check(false, filter, "com/bluetrainsoftwar/ResourceScanListener.class");
+		check(false, filter, "com/bluetrainsoftware/ResourceScanListener.clas");
+		check(true, filter, "META-INF/spring.factories");
+		check(true, filter, "lib/META-INF/spring.factories");
+		check(false, filter, "lib/META-INF/spring.factorie");
+	}
+
+	class Collector implements FilteredResourceScanListener {
+		final ResourceFilter filter;
+		final List<String> names = new ArrayList<>();
+
+		Collector(ResourceFilter filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		public ResourceFilter getResourceFilter() {
+			return filter;
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			for(ScanResource resource : scanResources) {
+				names.add(resource.resourceName);
+			}
+
+			return null;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.ONCE;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	private File jarOf(Class... clazzes) throws IOException {
+		File jar = File.createTempFile("filtered", ".jar");
+		jar.deleteOnExit();
+
+		JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jar));
+
+		for(Class clazz : clazzes) {
+			String clazzPath = clazz.getName().replace(".", "/") + ".class";
+
+			jarOutputStream.putNextEntry(new JarEntry(clazzPath));
+			IOUtils.copy(getClass().getResourceAsStream("/" + clazzPath), jarOutputStream);
+		}
+
+		jarOutputStream.close();
+
+		return jar;
+	}
+
+	@Test
+	public void listenersOnlySeeTheirMatches() throws Exception {
+		File classes = new File(SimpleJarClass.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		File jar = jarOf(SimpleJarClass.class, SimpleJarBangClass.class, ResourceFilterTests.class);
+
+		for(ScanConfiguration.JarEngine engine : ScanConfiguration.JarEngine.values()) {
+			ClasspathScanner.resetScannerForTesting();
+
+			ClasspathScanner cp = new ClasspathScanner();
+			cp.getConfiguration().setJarEngine(engine);
+
+			Collector simple = new Collector(new ResourceFilter().glob("**/SimpleJar*.class"));
+			Collector none = new Collector(new ResourceFilter().prefix("org/nothing/"));
+			Collector everything = new Collector(null);
+
+			cp.registerResourceScanner(simple);
+			cp.registerResourceScanner(none);
+			cp.registerResourceScanner(everything);
+
+			cp.scan(new URLClassLoader(new URL[] {classes.toURI().toURL(), jar.toURI().toURL()}));
+
+			assertEquals(4, simple.names.size());
+			assertEquals(0, none.names.size());
+			assertTrue(everything.names.size() > 2);
+		}
+	}
+
+	@Test
+	public void automatonAgreesWithEachFilter() {
+		ResourceFilter[] filters = {
+			new ResourceFilter().prefix("META-INF/"),
+			new ResourceFilter().suffix(".class", ".xml"),
+			new ResourceFilter().packageRoot("com.acme", "com.acme.sub"),
+			new ResourceFilter().packageRoot(""),
+			new ResourceFilter().glob("META-INF/*.xml", "**/*.properties"),
+			new ResourceFilter().glob("com/**/B.txt").prefix("org/x"),
+			new ResourceFilter().suffix("\u00e9.txt"),
+			null,
+			// these two share a bit, as listeners do once we run out
+			new ResourceFilter().prefix("top"),
+			new ResourceFilter().glob("**/sub/*")
+		};
+
+		int[] bits = {0, 1, 2, 3, 4, 5, 6, 7, 8, 8};
+
+		String[] names = {"META-INF/web-fragment.xml", "META-INF/MANIFEST.MF", "META-INF", "com/acme", "com/acme/Fred.class",
+			"com/acmeish/Fred.txt", "com/acme/sub/B.txt", "com/B.txt", "org/xylophone", "top.properties", "a/sub/c",
+			"caf\u00e9/d\u00e9.txt", "", "x"};
+
+		FilterAutomaton automaton = new FilterAutomaton(false);
+		FilterAutomaton rawAutomaton = new FilterAutomaton(true);
+
+		for (int count = 0; count < filters.length; count++) {
+			automaton.add(filters[count], bits[count]);
+			rawAutomaton.add(filters[count], bits[count]);
+		}
+
+		for (String name : names) {
+			long expected = 0;
+
+			for (int count = 0; count < filters.length; count++) {
+				if (filters[count] == null || filters[count].matches(name)) {
+					expected |= 1L << bits[count];
+				}
+			}
+
+			byte[] bytes = ("WEB-INF/classes/" + name).getBytes(Charset.forName("UTF-8"));
+			RawName rawName = new RawName().set(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), 0, bytes.length);
+
+			assertEquals(name, expected, automaton.match(name, 0, name.length()));
+			assertEquals(name + " (raw)", expected, rawAutomaton.match(rawName, "WEB-INF/classes/".length(), bytes.length));
+		}
+	}
+
+	@Test
+	public void roots() {
+		assertEquals("[org/x/, com/acme, META-INF/]", new ResourceFilter().packageRoot("com.acme").prefix("/org/x/").glob("META-INF/*.xml").roots().toString());
+		assertEquals(null, new ResourceFilter().packageRoot("com.acme").suffix(".xml").roots());
+		assertEquals(null, new ResourceFilter().glob("**/*.xml").roots());
+	}
+
+	private static final String[] TREE = {"com/acme/A.txt", "com/acme/sub/B.txt", "com/acmeish/C.txt", "com/other/D.txt", "org/x/E.txt"};
+
+	private List<String> scanOf(File source, ScanConfiguration configuration, ResourceFilter filter, long[] skipped) throws IOException {
+		Collector collector = new Collector(filter);
+		List<ResourceScanListener> listeners = new ArrayList<>();
+		listeners.add(collector);
+
+		ClasspathResource resource = new ClasspathResource(source, source.toURI().toURL());
+		resource.askListeners(listeners);
+		resource.fireListeners(configuration);
+
+		skipped[0] = resource.getSkipped();
+
+		List<String> names = new ArrayList<>();
+
+		for (String name : collector.names) {
+			if (name.endsWith(".txt")) {
+				names.add(name.startsWith("/") ? name.substring(1) : name);
+			}
+		}
+
+		Collections.sort(names);
+
+		return names;
+	}
+
+	@Test
+	public void partsNoFilterCanMatchAreSkipped() throws IOException {
+		File jar = File.createTempFile("pruned", ".jar");
+		jar.deleteOnExit();
+		File directory = Files.createTempDirectory("pruned").toFile();
+
+		JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jar));
+
+		for (String name : TREE) {
+			jarOutputStream.putNextEntry(new JarEntry(name));
+			jarOutputStream.write(name.getBytes("UTF-8"));
+
+			File file = new File(directory, name);
+			file.getParentFile().mkdirs();
+			Files.write(file.toPath(), name.getBytes("UTF-8"));
+		}
+
+		jarOutputStream.close();
+
+		List<ScanConfiguration> configurations = new ArrayList<>();
+
+		for (ScanConfiguration.JarEngine engine : ScanConfiguration.JarEngine.values()) {
+			ScanConfiguration configuration = new ScanConfiguration();
+			configuration.setJarEngine(engine);
+			configurations.add(configuration);
+		}
+
+		ScanConfiguration walking = new ScanConfiguration();
+		walking.setDirectoryIoPermits(4);
+		configurations.add(walking);
+
+		long[] skipped = new long[1];
+
+		for (ScanConfiguration configuration : configurations) {
+			for (File source : new File[] {jar, directory}) {
+				assertEquals(Arrays.asList("com/acme/A.txt", "com/acme/sub/B.txt"), scanOf(source, configuration, new ResourceFilter().packageRoot("com.acme"), skipped));
+				assertTrue(skipped[0] > 0);
+
+				assertEquals(Arrays.asList("com/acmeish/C.txt"), scanOf(source, configuration, new ResourceFilter().glob("com/acmeish/*.txt"), skipped));
+				assertTrue(skipped[0] > 0);
+
+				// a suffix could be anywhere
+				assertEquals(Arrays.asList("com/other/D.txt"), scanOf(source, configuration, new ResourceFilter().suffix("D.txt"), skipped));
+				assertEquals(0, skipped[0]);
+			}
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ScannedMarker {
+	String[] value() default {};
+	ElementType type() default ElementType.TYPE;
+	Retention nested() default @Retention(RetentionPolicy.CLASS);
+}
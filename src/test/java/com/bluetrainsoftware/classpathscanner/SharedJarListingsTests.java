@@ -0,0 +1,150 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class SharedJarListingsTests {
+	class NameListener implements FilteredResourceScanListener {
+		final ResourceFilter filter;
+		final List<String> names = new ArrayList<>();
+
+		NameListener(ResourceFilter filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		public ResourceFilter getResourceFilter() {
+			return filter;
+		}
+
+		@Override
+		public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+			for (ScanResource scanResource : scanResources) {
+				names.add(scanResource.resourceName);
+			}
+
+			return scanResources;
+		}
+
+		@Override
+		public void deliver(ScanResource desire, InputStream inputStream) {
+		}
+
+		@Override
+		public InterestAction isInteresting(InterestingResource interestingResource) {
+			return InterestAction.REPEAT;
+		}
+
+		@Override
+		public void scanAction(ScanAction action) {
+		}
+	}
+
+	private File createJar() throws IOException {
+		File jar = File.createTempFile("shared", ".jar");
+		jar.deleteOnExit();
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+
+		for (String name : new String[] {"com/fred/Fred.class", "com/fred/fred.xml", "META-INF/mary.properties"}) {
+			stream.putNextEntry(new JarEntry(name));
+			stream.write(name.getBytes("UTF-8"));
+		}
+
+		stream.close();
+
+		return jar;
+	}
+
+	private List<String> scan(File jar, ResourceFilter filter, ScanConfiguration configuration) throws IOException {
+		NameListener listener = new NameListener(filter);
+		List<ResourceScanListener> listeners = new ArrayList<>();
+		listeners.add(listener);
+
+		ClasspathResource resource = new ClasspathResource(jar, jar.toURI().toURL());
+		resource.askListeners(listeners);
+		resource.fireListeners(configuration);
+
+		return listener.names;
+	}
+
+	private void sharedAcrossLoaders(ScanConfiguration configuration) throws IOException {
+		File jar = createJar();
+		File link = new File(jar.getParentFile(), "link-" + jar.getName());
+		link.deleteOnExit();
+		Files.createLink(link.toPath(), jar.toPath());
+
+		long hits = SharedJarListings.shared.hits.get();
+		long misses = SharedJarListings.shared.misses.get();
+
+		// each loader still gets just what its own listeners want
+		assertEquals(1, scan(jar, new ResourceFilter().suffix(".class"), configuration).size());
+		assertEquals(2, scan(jar, new ResourceFilter().prefix("com/fred/"), configuration).size());
+		assertEquals(1, scan(link, new ResourceFilter().packageRoot("META-INF"), configuration).size());
+
+		assertEquals(1, SharedJarListings.shared.misses.get() - misses);
+		assertEquals(2, SharedJarListings.shared.hits.get() - hits);
+	}
+
+	@Test
+	public void jarFileEntriesAreTheJarsOwn() throws IOException {
+		File jar = File.createTempFile("attributes", ".jar");
+		jar.deleteOnExit();
+
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getEntries().put("com/fred/Fred.class", new Attributes());
+		manifest.getAttributes("com/fred/Fred.class").putValue("Fred", "yes");
+
+		JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar), manifest);
+		stream.putNextEntry(new JarEntry("com/fred/Fred.class"));
+		stream.write(1);
+		stream.close();
+
+		final List<String> attributes = new ArrayList<>();
+
+		NameListener listener = new NameListener(new ResourceFilter().suffix(".class")) {
+			@Override
+			public List<ScanResource> resource(List<ScanResource> scanResources) throws Exception {
+				for (ScanResource scanResource : scanResources) {
+					attributes.add(scanResource.entry.getAttributes().getValue("Fred"));
+				}
+
+				return null;
+			}
+		};
+
+		List<ResourceScanListener> listeners = new ArrayList<>();
+		listeners.add(listener);
+
+		ClasspathResource resource = new ClasspathResource(jar, jar.toURI().toURL());
+		resource.askListeners(listeners);
+		resource.fireListeners(new ScanConfiguration());
+
+		assertEquals("[yes]", attributes.toString());
+	}
+
+	@Test
+	public void mappedListingsAreShared() throws IOException {
+		ScanConfiguration configuration = new ScanConfiguration();
+		configuration.setJarEngine(ScanConfiguration.JarEngine.MAPPED);
+
+		sharedAcrossLoaders(configuration);
+	}
+}
@@ -0,0 +1,193 @@
+package com.bluetrainsoftware.classpathscanner;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Richard Vowles - https://plus.google.com/+RichardVowles
+ */
+public class ZipCentralDirectoryTests {
+	private byte[] content(String name) {
+		StringBuilder sb = new StringBuilder();
+
+		for(int count = 0; count < 50; count ++) {
+			sb.append(name).append(count);
+		}
+
+		return sb.toString().getBytes();
+	}
+
+	private File createJar(int entries, byte[] prefix) throws IOException {
+		File jar = File.createTempFile("central", ".jar");
+		jar.deleteOnExit();
+
+		FileOutputStream stream = new FileOutputStream(jar);
+
+		if (prefix != null) {
+			stream.write(prefix);
+		}
+
+		JarOutputStream jarOutputStream = new JarOutputStream(stream);
+
+		for(int count = 0; count < entries; count ++) {
+			String name = "com/bluetrainsoftware/" + (count % 10) + "/Entry" + count + ".txt";
+			byte[] data = content(name);
+			JarEntry entry = new JarEntry(name);
+
+			if (count % 2 == 0) {
+				CRC32 crc = new CRC32();
+				crc.update(data);
+
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(data.length);
+				entry.setCrc(crc.getValue());
+			}
+
+			jarOutputStream.putNextEntry(entry);
+			jarOutputStream.write(data);
+		}
+
+		jarOutputStream.close();
+		stream.close();
+
+		return jar;
+	}
+
+	private Map<String, Integer> names(ZipCentralDirectory directory) {
+		Map<String, Integer> names = new HashMap<>();
+
+		for(int index = 0; index < directory.size(); index ++) {
+			names.put(directory.name(index), index);
+		}
+
+		return names;
+	}
+
+	@Test
+	public void matchesJarFile() throws IOException {
+		File jar = createJar(50, null);
+
+		ZipCentralDirectory directory = ZipCentralDirectory.open(jar);
+		assertNotNull(directory);
+
+		Map<String, Integer> names = names(directory);
+
+		JarFile jarFile = new JarFile(jar);
+		Enumeration<JarEntry> entries = jarFile.entries();
+		int count = 0;
+
+		while (entries.hasMoreElements()) {
+			JarEntry entry = entries.nextElement();
+			Integer index = names.get(entry.getName());
+
+			assertNotNull("missing " + entry.getName(), index);
+			assertEquals(entry.getSize(), directory.size(index));
+			assertEquals(entry.getCrc(), directory.crc(index));
+			assertEquals(entry.getMethod(), directory.method(index));
+
+			InputStream mapped = directory.openStream(index);
+			assertEquals(new String(IOUtils.toByteArray(jarFile.getInputStream(entry))), new String(IOUtils.toByteArray(mapped)));
+			mapped.close();
+
+			count ++;
+		}
+
+		jarFile.close();
+
+		assertEquals(count, directory.size());
+	}
+
+	@Test
+	public void prefixedJar() throws IOException {
+		byte[] script = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes();
+		ZipCentralDirectory directory = ZipCentralDirectory.open(createJar(10, script));
+
+		Map<String, Integer> names = names(directory);
+		String name = "com/bluetrainsoftware/3/Entry3.txt";
+
+		assertTrue(names.containsKey(name));
+		assertEquals(new String(content(name)), new String(IOUtils.toByteArray(directory.openStream(names.get(name)))));
+		assertTrue(directory.nameStartsWith(names.get(name), new ByteLiteral("com/bluetrainsoftware/3/")));
+	}
+
+	@Test
+	public void zip64Jar() throws IOException {
+		int entries = 70000; // more than fits in the standard end record
+
+		ZipCentralDirectory directory = ZipCentralDirectory.open(createJar(entries, null));
+
+		assertEquals(entries, directory.size());
+
+		Map<String, Integer> names = names(directory);
+		String name = "com/bluetrainsoftware/9/Entry69999.txt";
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		IOUtils.copy(directory.openStream(names.get(name)), out);
+		assertEquals(new String(content(name)), out.toString());
+	}
+
+	@Test
+	public void indexServesUnchangedJars() throws IOException {
+		File indexDirectory = File.createTempFile("index", "");
+		indexDirectory.delete();
+
+		ScanIndex index = new ScanIndex(indexDirectory);
+		File jar = createJar(20, null);
+
+		ZipCentralDirectory read = index.open(jar);
+		ZipCentralDirectory indexed = index.open(jar);
+
+		assertEquals(1, index.getMisses());
+		assertEquals(1, index.getHits());
+		assertEquals(read.size(), indexed.size());
+
+		Map<String, Integer> names = names(indexed);
+		String name = "com/bluetrainsoftware/5/Entry15.txt";
+		assertEquals(new String(content(name)), new String(IOUtils.toByteArray(indexed.openStream(names.get(name)))));
+
+		// a changed jar has to be read again
+		File changed = createJar(5, null);
+		assertTrue(changed.renameTo(jar));
+		assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+
+		assertEquals(5, index.open(jar).size());
+		assertEquals(2, index.getMisses());
+
+		for(File file : indexDirectory.listFiles()) {
+			file.delete();
+		}
+
+		indexDirectory.delete();
+	}
+
+	@Test
+	public void badEnginePropertyFallsBack() {
+		try {
+			System.setProperty(ScanConfiguration.JAR_ENGINE_PROPERTY, " mapped ");
+			assertEquals(ScanConfiguration.JarEngine.MAPPED, ScanConfiguration.defaultJarEngine());
+
+			System.setProperty(ScanConfiguration.JAR_ENGINE_PROPERTY, "mappd");
+			assertEquals(ScanConfiguration.JarEngine.JAR_FILE, ScanConfiguration.defaultJarEngine());
+		} finally {
+			System.clearProperty(ScanConfiguration.JAR_ENGINE_PROPERTY);
+		}
+	}
+}